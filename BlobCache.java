@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The decoded contents of the blobs read most recently, up to a total
+ *  of CAPACITY bytes, so a blob read again by the same command, or by
+ *  a later one in a process that keeps the repo open, comes from
+ *  memory. When a blob would take the total over the capacity, the
+ *  blobs least recently read are dropped until it fits; a blob larger
+ *  than the whole capacity is never kept. Blobs never change once
+ *  stored, so nothing cached goes stale.
+ *
+ *  Cached arrays are shared with every reader, which must not change
+ *  them. Counts of lookups served and not served from memory are kept.
+ *  Lookups and updates are safe from several threads at once.
+ *  @author Adam
+ */
+final class BlobCache {
+    /** Bytes cached by default, set by the gitlet.blobcache property. **/
+    static final long CAPACITY = Long.getLong("gitlet.blobcache",
+            32L << 20);
+
+    /** Most bytes to keep. **/
+    private final long _capacity;
+    /** Cached contents by id, least recently read first. **/
+    private final LinkedHashMap<String, byte[]> _blobs =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /** Total length of the cached contents. **/
+    private long _size;
+    /** Lookups served from memory. **/
+    private long _hits;
+    /** Lookups that were not. **/
+    private long _misses;
+
+    /** A cache of at most CAPACITY bytes.
+     * @param capacity capacity
+     **/
+    BlobCache(long capacity) {
+        _capacity = capacity;
+    }
+    /** Returns the contents of blob ID, or null if they are not cached.
+     * @param id id
+     * @return byte[]
+     **/
+    synchronized byte[] get(String id) {
+        byte[] contents = _blobs.get(id);
+        if (contents == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return contents;
+    }
+    /** Caches CONTENTS as those of blob ID, dropping the blobs least
+     *  recently read to make room.
+     * @param id id
+     * @param contents contents
+     **/
+    synchronized void put(String id, byte[] contents) {
+        if (contents.length > _capacity || _blobs.containsKey(id)) {
+            return;
+        }
+        Iterator<Map.Entry<String, byte[]>> eldest =
+                _blobs.entrySet().iterator();
+        while (_size + contents.length > _capacity) {
+            _size -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+        _blobs.put(id, contents);
+        _size += contents.length;
+    }
+    /** Returns the counts of this cache, on one line. **/
+    synchronized String stats() {
+        return String.format("blob cache: %d hits, %d misses,"
+                + " %d bytes in %d blobs", _hits, _misses, _size,
+                _blobs.size());
+    }
+}
@@ -0,0 +1,372 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** Content-addressed blob storage. File contents are streamed through
+ *  SHA-1 in fixed-size buffers while they are written to a temp file,
+ *  which is then renamed to its hash, so every byte is read once and
+ *  memory stays flat however large the file is. Each stored file is
+ *  one codec header byte followed by the encoded contents; ids are
+ *  always the hash of the decoded contents. Blobs that have been
+ *  packed by gc are read from the pack instead. Decoded contents read
+ *  whole are kept in a BlobCache, which every read looks in first.
+ *  @author Adam
+ */
+final class BlobStore {
+    /** Size of the buffer used for every copy and hash. **/
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** A blob is kept encoded only if that saves at least
+     *  1/MIN_SAVING of the size of its first PROBE_SIZE bytes. **/
+    private static final int MIN_SAVING = 8;
+    /** Bytes of a blob encoded in memory to decide its codec. **/
+    private static final int PROBE_SIZE = BUFFER_SIZE;
+
+    /** Folder holding one file per blob, named by its id. **/
+    private final File _dir;
+    /** Codec used for newly written blobs. **/
+    private final Codec _codec;
+    /** Journal new blobs are noted in, to be synced before any ref
+     *  can name them. **/
+    private final Journal _journal;
+    /** Folder holding the pack. **/
+    private final File _packDir;
+    /** The pack, once opened. **/
+    private PackFile _pack;
+    /** True once the pack has been looked for. **/
+    private boolean _packOpened;
+    /** Identity of the pack file, as of looking for the pack. **/
+    private Object _packKey;
+    /** Contents of the blobs read most recently. **/
+    private final BlobCache _cache = new BlobCache(BlobCache.CAPACITY);
+
+    /** Opens the blob store kept in DIR, writing new blobs with CODEC
+     *  and noting them in JOURNAL.
+     * @param dir dir
+     * @param codec codec
+     * @param journal journal
+     **/
+    BlobStore(File dir, Codec codec, Journal journal) {
+        _dir = dir;
+        _codec = codec;
+        _journal = journal;
+        _packDir = Utils.join(dir, "pack");
+    }
+    /** Returns the file holding blob ID.
+     * @param id id
+     * @return File
+     **/
+    File file(String id) {
+        return Utils.join(_dir, id);
+    }
+    /** Returns true if blob ID is stored.
+     * @param id id
+     * @return boolean
+     **/
+    boolean contains(String id) throws IOException {
+        return file(id).exists() || (pack() != null && pack().contains(id));
+    }
+    /** Encodes SOURCE straight into the store, hashing it on the way,
+     *  and returns the id of its contents. The blob is written to a
+     *  temp file that is renamed to its id, or dropped if the store
+     *  already has that blob. A file whose first PROBE_SIZE bytes the
+     *  codec shrinks by less than 1/MIN_SAVING, such as one already
+     *  compressed, is written as is, so reading it costs nothing and
+     *  checkout can copy it file to file. Only those bytes are encoded
+     *  twice; the file is still read once.
+     * @param source source
+     * @return String
+     **/
+    String store(File source) throws IOException {
+        _dir.mkdirs();
+        File tmp = File.createTempFile("tmp-", null, _dir);
+        String id;
+        try (InputStream in = new FileInputStream(source)) {
+            byte[] prefix = in.readNBytes(PROBE_SIZE);
+            Codec codec = shrinks(prefix) ? _codec : Codec.STORE;
+            id = copy(new SequenceInputStream(
+                    new ByteArrayInputStream(prefix), in), tmp, codec);
+        }
+        if (contains(id)) {
+            tmp.delete();
+        } else {
+            Files.move(tmp.toPath(), file(id).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            _journal.written(file(id));
+        }
+        return id;
+    }
+    /** Writes the contents of blob ID to DEST. Only a loose blob kept
+     *  unencoded, with STORE, is copied file to file with
+     *  FileChannel.transferTo, which the kernel can do without bringing
+     *  the bytes into the JVM, or by sharing extents where the
+     *  filesystem allows. Under the default codec that is the blobs
+     *  deflate could not shrink, which store keeps as is; a deflated
+     *  blob must be inflated through a buffer, and a packed or cached
+     *  one is written from its bytes. Every blob file starts with its
+     *  codec byte, so none can be hard-linked into the tree.
+     * @param id id
+     * @param dest dest
+     **/
+    void checkout(String id, File dest) throws IOException {
+        File parent = dest.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        byte[] contents = loaded(id);
+        if (contents != null) {
+            Files.write(dest.toPath(), contents);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file(id).toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(1);
+            in.read(header, 0);
+            if (header.get(0) == Codec.STORE.id()) {
+                try (FileChannel out = FileChannel.open(dest.toPath(),
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long size = in.size();
+                    long pos = 1;
+                    while (pos < size) {
+                        pos += in.transferTo(pos, size - pos, out);
+                    }
+                }
+                return;
+            }
+        }
+        try (InputStream in = open(id)) {
+            Files.copy(in, dest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    /** Returns a stream of the decoded contents of blob ID.
+     * @param id id
+     * @return InputStream
+     **/
+    InputStream open(String id) throws IOException {
+        byte[] contents = loaded(id);
+        if (contents != null) {
+            return new ByteArrayInputStream(contents);
+        }
+        return open(file(id));
+    }
+    /** Returns a stream of the decoded contents of FILE, a blob in the
+     *  form the store keeps it, such as a staged copy.
+     * @param file file
+     * @return InputStream
+     **/
+    InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(
+                new FileInputStream(file), BUFFER_SIZE);
+        try {
+            return Codec.forId(in.read()).unwrap(in);
+        } catch (IOException excp) {
+            in.close();
+            throw excp;
+        }
+    }
+    /** Returns the decoded contents of blob ID, which the caller must
+     *  not change, since they may be cached.
+     * @param id id
+     * @return byte[]
+     **/
+    byte[] read(String id) throws IOException {
+        byte[] contents = loaded(id);
+        if (contents == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = open(file(id))) {
+                in.transferTo(out);
+            }
+            contents = out.toByteArray();
+            _cache.put(id, contents);
+        }
+        return contents;
+    }
+    /** Moves every loose blob, and every blob already packed, into a
+     *  new pack. HISTORIES maps each path to the blobs it has held,
+     *  oldest first, so each version can be stored as a delta against
+     *  the one before.
+     * @param histories histories
+     **/
+    void repack(Map<String, ? extends Collection<String>> histories)
+            throws IOException {
+        _packDir.mkdir();
+        List<String> loose = new ArrayList<>(Utils.plainFilenamesIn(_dir));
+        loose.removeIf(name -> name.startsWith("tmp-"));
+        List<String> extra = new ArrayList<>(loose);
+        if (pack() != null) {
+            HashSet<String> tracked = new HashSet<>();
+            for (Collection<String> versions : histories.values()) {
+                tracked.addAll(versions);
+            }
+            for (String id : pack().ids()) {
+                if (!tracked.contains(id)) {
+                    extra.add(id);
+                }
+            }
+        }
+        PackFile.write(_packDir, histories, extra, this::open, _codec);
+        Journal.sync(List.of(Utils.join(_packDir, PackFile.NAME)));
+        refresh();
+        for (String id : loose) {
+            file(id).delete();
+        }
+    }
+    /** Returns the pack, or null if gc has not made one. Blobs may be
+     *  read from several threads, so it is opened under a lock. **/
+    private synchronized PackFile pack() throws IOException {
+        if (!_packOpened) {
+            _packKey = packKey();
+            _pack = PackFile.open(_packDir);
+            _packOpened = true;
+        }
+        return _pack;
+    }
+    /** Returns the identity of the pack file, which a new pack replacing
+     *  it changes, or null if there is none. **/
+    private Object packKey() throws IOException {
+        try {
+            return Files.readAttributes(
+                    Utils.join(_packDir, PackFile.NAME).toPath(),
+                    BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException excp) {
+            return null;
+        }
+    }
+    /** Looks for the pack again if a new one has been written since it
+     *  was opened. **/
+    synchronized void refresh() throws IOException {
+        if (_packOpened && !Objects.equals(packKey(), _packKey)) {
+            if (_pack != null) {
+                _pack.close();
+            }
+            _pack = null;
+            _packOpened = false;
+        }
+    }
+    /** Returns the counts of the blob cache, on one line. **/
+    String cacheStats() {
+        return _cache.stats();
+    }
+    /** Returns the decoded contents of blob ID if they are cached or
+     *  the blob is packed, caching them in the latter case, or null if
+     *  the blob is loose and must be decoded from its file.
+     * @param id id
+     * @return byte[]
+     **/
+    private byte[] loaded(String id) throws IOException {
+        byte[] contents = _cache.get(id);
+        if (contents == null && !file(id).exists()) {
+            contents = readPacked(id);
+            _cache.put(id, contents);
+        }
+        return contents;
+    }
+    /** Returns the contents of blob ID from the pack, looking for a new
+     *  pack if gc replaced the one opened and deleted the blob's file.
+     * @param id id
+     * @return byte[]
+     **/
+    private byte[] readPacked(String id) throws IOException {
+        byte[] contents = pack() == null ? null : pack().read(id);
+        if (contents == null) {
+            refresh();
+            contents = pack() == null ? null : pack().read(id);
+        }
+        if (contents == null) {
+            throw new FileNotFoundException("no blob " + id);
+        }
+        return contents;
+    }
+    /** Returns the id FILE would have as a blob.
+     * @param file file
+     * @return String
+     **/
+    static String hash(File file) throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return MetaStore.toHex(digest.digest());
+    }
+    /** Returns true if FILE exists and holds exactly blob ID.
+     * @param id id
+     * @param file file
+     * @return boolean
+     **/
+    static boolean matches(String id, File file) throws IOException {
+        return file.isFile() && id.equals(hash(file));
+    }
+    /** Returns true if the codec of new blobs shrinks PREFIX, the start
+     *  of a blob, by at least 1/MIN_SAVING.
+     * @param prefix prefix
+     * @return boolean
+     **/
+    private boolean shrinks(byte[] prefix) throws IOException {
+        if (_codec == Codec.STORE) {
+            return false;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = _codec.wrap(encoded)) {
+            out.write(prefix);
+        }
+        return encoded.size() <= prefix.length - prefix.length / MIN_SAVING;
+    }
+    /** Encodes IN into DEST with CODEC and returns the id of what was
+     *  copied.
+     * @param in in
+     * @param dest dest
+     * @param codec codec
+     * @return String
+     **/
+    private static String copy(InputStream in, File dest, Codec codec)
+            throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        OutputStream file = new FileOutputStream(dest);
+        try (OutputStream out = codec.wrap(file)) {
+            file.write(codec.id());
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+        }
+        return MetaStore.toHex(digest.digest());
+    }
+    /** Returns a fresh SHA-1 digest. **/
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+}
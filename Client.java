@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Runs a command through the Daemon serving the repository in the
+ *  current directory, or in this JVM through Main if none is running.
+ *  Forwarding opens nothing but the socket, so a forwarded command
+ *  starts only a small JVM and never reads the repo itself.
+ *  @author Adam
+ */
+public final class Client {
+    /** Not instantiable. **/
+    private Client() {
+    }
+
+    /** Runs the command ARGS.
+     * @param args args
+     **/
+    public static void main(String[] args) throws Exception {
+        if (!forward(args)) {
+            Main.main(args);
+        }
+    }
+    /** Sends ARGS to the daemon and copies its reply to System.out and
+     *  System.err, returning false if no daemon is listening.
+     * @param args args
+     * @return boolean
+     **/
+    static boolean forward(String[] args) throws IOException {
+        Path socket = Paths.get(System.getProperty("user.dir"), ".gitlet",
+                Daemon.SOCKET);
+        if (!Files.exists(socket)) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            channel.shutdownOutput();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            for (int stream = in.read(); stream >= 0; stream = in.read()) {
+                byte[] bytes = in.readNBytes(in.readInt());
+                if (stream == Daemon.STDERR) {
+                    System.err.write(bytes);
+                } else {
+                    System.out.write(bytes);
+                }
+            }
+            System.out.flush();
+            System.err.flush();
+        }
+        return true;
+    }
+}
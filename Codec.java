@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The ways a blob can be encoded on disk. Every stored blob starts
+ *  with the id byte of the codec that wrote it, so a repository can
+ *  change codecs without rewriting the blobs it already has.
+ *  @author Adam
+ */
+enum Codec {
+    /** Stored as is. **/
+    STORE(0) {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return out;
+        }
+        @Override
+        InputStream unwrap(InputStream in) {
+            return in;
+        }
+    },
+    /** Deflate at its default level. **/
+    DEFLATE(1) {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return deflating(out, Deflater.DEFAULT_COMPRESSION);
+        }
+        @Override
+        InputStream unwrap(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    },
+    /** Deflate tuned for speed over size. **/
+    DEFLATE_FAST(2) {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return deflating(out, Deflater.BEST_SPEED);
+        }
+        @Override
+        InputStream unwrap(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    };
+
+    /** Codec used by a new repository unless told otherwise. **/
+    static final Codec DEFAULT = DEFLATE;
+
+    /** Header byte naming this codec. **/
+    private final byte _id;
+
+    /** A codec whose header byte is ID.
+     * @param id id
+     **/
+    Codec(int id) {
+        _id = (byte) id;
+    }
+    /** Returns the header byte naming this codec. **/
+    byte id() {
+        return _id;
+    }
+    /** Returns a stream that encodes what is written to it into OUT.
+     * @param out out
+     * @return OutputStream
+     **/
+    abstract OutputStream wrap(OutputStream out);
+    /** Returns a stream that decodes what it reads from IN.
+     * @param in in
+     * @return InputStream
+     **/
+    abstract InputStream unwrap(InputStream in);
+
+    /** Returns the codec whose header byte is ID.
+     * @param id id
+     * @return Codec
+     **/
+    static Codec forId(int id) throws IOException {
+        for (Codec c : values()) {
+            if (c._id == id) {
+                return c;
+            }
+        }
+        throw new IOException("unknown blob codec " + id);
+    }
+    /** Returns the codec called NAME, ignoring case.
+     * @param name name
+     * @return Codec
+     **/
+    static Codec named(String name) {
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+    /** Returns a deflating stream into OUT that frees its native
+     *  deflater when closed.
+     * @param out out
+     * @param level level
+     * @return OutputStream
+     **/
+    private static OutputStream deflating(OutputStream out, int level) {
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater,
+                BlobStore.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/** The shape of the commit history, kept beside the commit log so
+ *  ancestry can be answered without reading any commit. Each commit
+ *  has a fixed-width record, in the order the commits were written:
+ *  its id, the positions of up to two parents, its generation number
+ *  and its time. A parent is always written before its children, so
+ *  every parent position is smaller than its child's.
+ *
+ *  The generation of a root commit is 1, and of any other commit one
+ *  more than that of its highest parent. A commit can only be an
+ *  ancestor of commits with a higher generation, which is what lets
+ *  the walks below stop early.
+ *
+ *  Records are appended without a sync, so the file is checked as it
+ *  is read: it is cut at the first record whose parents do not come
+ *  before it or whose generation does not follow from theirs. The
+ *  store checks the last id against the commit log in turn.
+ *  @author Adam
+ */
+final class CommitGraph {
+    /** Length in bytes of one record. **/
+    private static final int RECORD = MetaStore.HASH_BYTES + 4 + 4 + 4 + 8;
+    /** Parent position meaning there is no such parent. **/
+    private static final int NONE = -1;
+    /** Walk flag for commits reached from the first side. **/
+    private static final byte LEFT = 1;
+    /** Walk flag for commits reached from the second side. **/
+    private static final byte RIGHT = 2;
+
+    /** File the records are kept in. **/
+    private final File _file;
+    /** True if commits added are written to _file, false if they are
+     *  only kept in memory, as when another command is writing it. **/
+    private final boolean _writable;
+    /** Commit ids, numbered by position. **/
+    private IdTable _ids = new IdTable();
+    /** First parent positions. **/
+    private int[] _first = new int[16];
+    /** Second parent positions. **/
+    private int[] _second = new int[16];
+    /** Generation numbers. **/
+    private int[] _generation = new int[16];
+    /** Commit times. **/
+    private long[] _time = new long[16];
+    /** Number of commits. **/
+    private int _size;
+
+    /** Reads the graph kept in FILE, writing the commits added to it
+     *  there if WRITABLE.
+     * @param file file
+     * @param writable writable
+     **/
+    CommitGraph(File file, boolean writable) throws IOException {
+        _file = file;
+        _writable = writable;
+        if (!file.exists()) {
+            return;
+        }
+        ByteBuffer table = ByteBuffer.wrap(Utils.readContents(file));
+        for (int i = 0; i + RECORD <= table.capacity(); i += RECORD) {
+            int p = i + MetaStore.HASH_BYTES;
+            int first = table.getInt(p);
+            int second = table.getInt(p + 4);
+            int generation = table.getInt(p + 8);
+            if (!valid(first, second, generation)) {
+                break;
+            }
+            add(table, i, first, second, generation, table.getLong(p + 12));
+        }
+        if (writable && table.capacity() != (long) _size * RECORD) {
+            truncate();
+        }
+    }
+    /** Empties the graph, and its file if it is written, so it can be
+     *  built again from the commit log. **/
+    void reset() throws IOException {
+        _ids = new IdTable();
+        _size = 0;
+        if (_writable) {
+            truncate();
+        }
+    }
+    /** Returns the number of commits in the graph. **/
+    int size() {
+        return _size;
+    }
+    /** Returns the id of the commit at POSITION.
+     * @param position position
+     * @return String
+     **/
+    String id(int position) {
+        return _ids.id(position);
+    }
+    /** Returns the commit ids, numbered by position. **/
+    IdTable ids() {
+        return _ids;
+    }
+    /** Returns the time of the commit at POSITION.
+     * @param position position
+     * @return long
+     **/
+    long time(int position) {
+        return _time[position];
+    }
+    /** Returns true if the graph holds commit ID.
+     * @param id id
+     * @return boolean
+     **/
+    boolean contains(String id) {
+        return _ids.find(id) >= 0;
+    }
+    /** Adds COMMIT, whose parents must already be in the graph.
+     * @param commit commit
+     **/
+    void append(CommitRecord commit) throws IOException {
+        if (contains(commit.getSha1())) {
+            return;
+        }
+        int first = NONE;
+        int second = NONE;
+        int generation = 1;
+        for (String parent : commit.getMergeParents()) {
+            int p = position(parent);
+            if (first == NONE) {
+                first = p;
+            } else {
+                second = p;
+            }
+            generation = Math.max(generation, _generation[p] + 1);
+        }
+        if (_writable) {
+            try (DataOutputStream out = new DataOutputStream(
+                    new FileOutputStream(_file, true))) {
+                out.write(MetaStore.fromHex(commit.getSha1()));
+                out.writeInt(first);
+                out.writeInt(second);
+                out.writeInt(generation);
+                out.writeLong(commit.getTime());
+            }
+        }
+        add(ByteBuffer.wrap(MetaStore.fromHex(commit.getSha1())), 0, first,
+                second, generation, commit.getTime());
+    }
+    /** Returns true if ANCESTOR is DESCENDANT or one of its ancestors,
+     *  following every parent of merge commits.
+     * @param ancestor ancestor
+     * @param descendant descendant
+     * @return boolean
+     **/
+    boolean isAncestor(String ancestor, String descendant)
+            throws IOException {
+        int target = position(ancestor);
+        int floor = _generation[target];
+        boolean[] seen = new boolean[_size];
+        int[] stack = new int[2 * _size + 1];
+        int top = 0;
+        stack[top++] = position(descendant);
+        while (top > 0) {
+            int c = stack[--top];
+            if (c == target) {
+                return true;
+            }
+            if (seen[c] || _generation[c] <= floor) {
+                continue;
+            }
+            seen[c] = true;
+            for (int p : new int[] {_first[c], _second[c]}) {
+                if (p != NONE && !seen[p]) {
+                    stack[top++] = p;
+                }
+            }
+        }
+        return false;
+    }
+    /** Returns a lowest common ancestor of LEFT and RIGHT: one that is
+     *  not an ancestor of any other common ancestor. Commits are
+     *  visited highest generation first, newest first among equals, so
+     *  the first one reached from both sides is such an ancestor.
+     *  Returns null if there is none.
+     * @param left left
+     * @param right right
+     * @return String
+     **/
+    String mergeBase(String left, String right) throws IOException {
+        byte[] flags = new byte[_size];
+        boolean[] done = new boolean[_size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) ->
+                _generation[a] != _generation[b]
+                ? Integer.compare(_generation[b], _generation[a])
+                : _time[a] != _time[b] ? Long.compare(_time[b], _time[a])
+                : Integer.compare(b, a));
+        int l = position(left);
+        int r = position(right);
+        flags[l] |= LEFT;
+        flags[r] |= RIGHT;
+        queue.add(l);
+        queue.add(r);
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            if (done[c]) {
+                continue;
+            }
+            done[c] = true;
+            if (flags[c] == (LEFT | RIGHT)) {
+                return _ids.id(c);
+            }
+            for (int p : new int[] {_first[c], _second[c]}) {
+                if (p != NONE && (flags[p] | flags[c]) != flags[p]) {
+                    flags[p] |= flags[c];
+                    queue.add(p);
+                }
+            }
+        }
+        return null;
+    }
+    /** Returns true if a record at the next position, with parents
+     *  FIRST and SECOND and generation GENERATION, is consistent with
+     *  those before it.
+     * @param first first
+     * @param second second
+     * @param generation generation
+     * @return boolean
+     **/
+    private boolean valid(int first, int second, int generation) {
+        int expected = 1;
+        for (int p : new int[] {first, second}) {
+            if (p != NONE) {
+                if (p < 0 || p >= _size) {
+                    return false;
+                }
+                expected = Math.max(expected, _generation[p] + 1);
+            }
+        }
+        return generation == expected && (first != NONE || second == NONE);
+    }
+    /** Cuts the file to the records read. **/
+    private void truncate() throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(_file, "rw")) {
+            out.setLength((long) _size * RECORD);
+        }
+    }
+    /** Returns the position of commit ID.
+     * @param id id
+     * @return int
+     **/
+    private int position(String id) throws IOException {
+        int p = _ids.find(id);
+        if (p < 0) {
+            throw new IOException("commit " + id + " is not in the graph");
+        }
+        return p;
+    }
+    /** Adds the record for the id held in SRC at POS, with parents
+     *  FIRST and SECOND, generation GENERATION and time TIME, to the
+     *  tables.
+     * @param src src
+     * @param pos pos
+     * @param first first
+     * @param second second
+     * @param generation generation
+     * @param time time
+     **/
+    private void add(ByteBuffer src, int pos, int first, int second,
+                     int generation, long time) {
+        if (_size == _first.length) {
+            int capacity = _size * 2;
+            _first = Arrays.copyOf(_first, capacity);
+            _second = Arrays.copyOf(_second, capacity);
+            _generation = Arrays.copyOf(_generation, capacity);
+            _time = Arrays.copyOf(_time, capacity);
+        }
+        _ids.add(src, pos);
+        _first[_size] = first;
+        _second[_size] = second;
+        _generation[_size] = generation;
+        _time[_size] = time;
+        _size += 1;
+    }
+}
@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/** An immutable commit as it is kept in the metadata store. Parents
+ *  are referred to by id, so reading one commit never drags its whole
+ *  history in with it. Every record has an author after the message,
+ *  empty when it is not known.
+ *  @author Adam
+ */
+final class CommitRecord {
+    /** Id of this commit. **/
+    private final String _sha1;
+    /** Ids of the parents, first parent first. **/
+    private final List<String> _parents;
+    /** Commit time in milliseconds since the epoch. **/
+    private final long _time;
+    /** Commit message. **/
+    private final String _msg;
+    /** Who made the commit, or null if that was not recorded. **/
+    private final String _author;
+    /** Id of the root tree of the snapshot. **/
+    private final String _tree;
+
+    /** Creates a new commit and computes its id.
+     * @param time time
+     * @param author author, or null
+     * @param msg msg
+     * @param tree tree
+     * @param parents parents
+     **/
+    CommitRecord(long time, String author, String msg, String tree,
+                 String... parents) {
+        _time = time;
+        _author = author;
+        _msg = msg;
+        _tree = tree;
+        _parents = Collections.unmodifiableList(Arrays.asList(parents));
+        _sha1 = Utils.sha1(encodeBody());
+    }
+    /** Rebuilds a commit that was already written.
+     * @param sha1 sha1
+     * @param time time
+     * @param author author
+     * @param msg msg
+     * @param tree tree
+     * @param parents parents
+     **/
+    private CommitRecord(String sha1, long time, String author, String msg,
+                         String tree, String[] parents) {
+        _sha1 = sha1;
+        _time = time;
+        _author = author;
+        _msg = msg;
+        _tree = tree;
+        _parents = Collections.unmodifiableList(Arrays.asList(parents));
+    }
+    /** Returns the id. **/
+    String getSha1() {
+        return _sha1;
+    }
+    /** Returns the first parent id, or null for the initial commit. **/
+    String getParent() {
+        return _parents.isEmpty() ? null : _parents.get(0);
+    }
+    /** Returns all parent ids. **/
+    List<String> getMergeParents() {
+        return _parents;
+    }
+    /** Returns true if this commit has two parents. **/
+    boolean isMerge() {
+        return _parents.size() == 2;
+    }
+    /** Returns the message. **/
+    String getMsg() {
+        return _msg;
+    }
+    /** Returns who made the commit, or null if that is not known. **/
+    String getAuthor() {
+        return _author;
+    }
+    /** Returns the commit time. **/
+    Date getDate() {
+        return new Date(_time);
+    }
+    /** Returns the commit time in milliseconds. **/
+    long getTime() {
+        return _time;
+    }
+    /** Returns the id of the root tree. **/
+    String getTree() {
+        return _tree;
+    }
+
+    /** Returns the encoded record: the id followed by the body. **/
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MetaStore.fromHex(_sha1));
+            out.write(encodeBody());
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+    /** Returns the body of the record, which is what the id hashes. **/
+    private byte[] encodeBody() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(_parents.size());
+            for (String p : _parents) {
+                out.write(MetaStore.fromHex(p));
+            }
+            out.writeLong(_time);
+            MetaStore.writeString(out, _msg);
+            MetaStore.writeString(out, _author == null ? "" : _author);
+            out.write(MetaStore.fromHex(_tree));
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+    /** Reads a record written by encode.
+     * @param in in
+     * @return CommitRecord
+     **/
+    static CommitRecord decode(DataInputStream in) throws IOException {
+        String sha1 = MetaStore.readHash(in);
+        String[] parents = new String[in.readUnsignedByte()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = MetaStore.readHash(in);
+        }
+        long time = in.readLong();
+        String msg = MetaStore.readString(in);
+        String author = MetaStore.readString(in);
+        String tree = MetaStore.readHash(in);
+        return new CommitRecord(sha1, time,
+                author.isEmpty() ? null : author, msg, tree, parents);
+    }
+}
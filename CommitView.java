@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/** A cursor over the commit log that reads one commit at a time in
+ *  place, from the mapped log, rather than decoding it into a
+ *  CommitRecord. Moving to a commit, or to its parent, looks its id up
+ *  in binary, and the id, the parents and the message are written out
+ *  through buffers the view keeps, so walking and printing any number
+ *  of commits makes no objects per commit.
+ *
+ *  A commit is read as CommitRecord.encode laid it out: the id, the
+ *  parent count, the parents, the time, the message and the author
+ *  as lengths and UTF-8 bytes, then the tree.
+ *  @author Adam
+ */
+final class CommitView {
+    /** Length in bytes of an id. **/
+    private static final int LENGTH = MetaStore.HASH_BYTES;
+    /** Hex digits. **/
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The commit log. **/
+    private final RecordLog _log;
+    /** Buffer holding the current commit: the mapped log, or _scratch
+     *  for a log too large to map. Read only at absolute positions. **/
+    private ByteBuffer _buf;
+    /** The view's own duplicate of _buf, for decoding the message. **/
+    private ByteBuffer _in;
+    /** Buffer commits are read into when the log is not mapped. **/
+    private ByteBuffer _scratch;
+    /** Position in _buf of the current commit's id. **/
+    private int _start;
+    /** Buffer an id is written through. **/
+    private final char[] _hex = new char[2 * LENGTH];
+    /** Decoder of messages. **/
+    private final CharsetDecoder _decoder = StandardCharsets.UTF_8
+            .newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    /** Buffer a message is decoded into. **/
+    private CharBuffer _chars = CharBuffer.allocate(256);
+
+    /** A view of the commits in LOG, on none of them yet.
+     * @param log log
+     **/
+    CommitView(RecordLog log) {
+        _log = log;
+    }
+    /** Returns the number of commits in the log. **/
+    int count() throws IOException {
+        return _log.size();
+    }
+    /** Moves to commit number ENTRY of the log, in the order the
+     *  commits were written.
+     * @param entry entry
+     **/
+    void moveTo(int entry) throws IOException {
+        ByteBuffer map = _log.map(entry);
+        if (map != null) {
+            if (map != _buf) {
+                _buf = map;
+                _in = map.duplicate();
+            }
+            _start = (int) _log.offset(entry) + 4;
+        } else {
+            _scratch = _log.read(entry, _scratch);
+            _buf = _scratch;
+            _in = _scratch;
+            _start = 0;
+        }
+    }
+    /** Moves to commit ID, returning false if there is none.
+     * @param id id
+     * @return boolean
+     **/
+    boolean moveTo(String id) throws IOException {
+        return id != null && moveToEntry(_log.entry(id));
+    }
+    /** Moves to the commit whose id is id INDEX of IDS, returning false
+     *  if there is none.
+     * @param ids ids
+     * @param index index
+     * @return boolean
+     **/
+    boolean moveTo(IdTable ids, int index) throws IOException {
+        return moveToEntry(_log.entry(ids, index));
+    }
+    /** Moves to parent I of the current commit, returning false if it
+     *  has no such parent.
+     * @param i i
+     * @return boolean
+     **/
+    boolean moveToParent(int i) throws IOException {
+        if (i >= parentCount()) {
+            return false;
+        }
+        int entry = _log.entry(_buf, parent(i));
+        if (entry < 0) {
+            throw new IOException("missing parent of commit " + id());
+        }
+        moveTo(entry);
+        return true;
+    }
+    /** Returns the number of parents. **/
+    int parentCount() {
+        return _buf.get(_start + LENGTH) & 0xff;
+    }
+    /** Returns true if the commit has two parents. **/
+    boolean isMerge() {
+        return parentCount() == 2;
+    }
+    /** Returns the commit time in milliseconds. **/
+    long time() {
+        return _buf.getLong(timeAt());
+    }
+    /** Returns the id, which unlike writeId makes a String. **/
+    String id() {
+        return new String(hex(_start, 2 * LENGTH), 0, 2 * LENGTH);
+    }
+    /** Returns the message, which unlike writeMsg makes a String. **/
+    String msg() {
+        byte[] bytes = new byte[_buf.getInt(msgAt())];
+        _buf.get(msgAt() + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    /** Returns true if the message is MSG, given in UTF-8.
+     * @param msg msg
+     * @return boolean
+     **/
+    boolean msgEquals(byte[] msg) {
+        int at = msgAt();
+        if (_buf.getInt(at) != msg.length) {
+            return false;
+        }
+        for (int i = 0; i < msg.length; i++) {
+            if (_buf.get(at + 4 + i) != msg[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /** Writes the id to OUT.
+     * @param out out
+     **/
+    void writeId(Writer out) throws IOException {
+        out.write(hex(_start, 2 * LENGTH), 0, 2 * LENGTH);
+    }
+    /** Writes the first DIGITS hex digits of parent I to OUT.
+     * @param i i
+     * @param out out
+     * @param digits digits
+     **/
+    void writeParent(int i, Writer out, int digits) throws IOException {
+        out.write(hex(parent(i), digits), 0, digits);
+    }
+    /** Writes the message to OUT.
+     * @param out out
+     **/
+    void writeMsg(Writer out) throws IOException {
+        int at = msgAt();
+        int length = _buf.getInt(at);
+        if (_chars.capacity() < length) {
+            _chars = CharBuffer.allocate(Math.max(length,
+                    2 * _chars.capacity()));
+        }
+        _in.clear().position(at + 4).limit(at + 4 + length);
+        _chars.clear();
+        _decoder.reset();
+        _decoder.decode(_in, _chars, true);
+        _decoder.flush(_chars);
+        out.write(_chars.array(), 0, _chars.position());
+    }
+
+    /** Moves to commit number ENTRY, returning false if it is -1.
+     * @param entry entry
+     * @return boolean
+     **/
+    private boolean moveToEntry(int entry) throws IOException {
+        if (entry < 0) {
+            return false;
+        }
+        moveTo(entry);
+        return true;
+    }
+    /** Returns the position in _buf of parent I.
+     * @param i i
+     * @return int
+     **/
+    private int parent(int i) {
+        return _start + LENGTH + 1 + i * LENGTH;
+    }
+    /** Returns the position in _buf of the time. **/
+    private int timeAt() {
+        return parent(parentCount());
+    }
+    /** Returns the position in _buf of the message's length. **/
+    private int msgAt() {
+        return timeAt() + 8;
+    }
+    /** Returns _hex holding the first DIGITS hex digits of the bytes in
+     *  _buf at POS.
+     * @param pos pos
+     * @param digits digits
+     * @return char[]
+     **/
+    private char[] hex(int pos, int digits) {
+        for (int i = 0; i < digits; i++) {
+            int b = _buf.get(pos + i / 2);
+            _hex[i] = HEX[(i % 2 == 0 ? b >> 4 : b) & 0xf];
+        }
+        return _hex;
+    }
+}
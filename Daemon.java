@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** A server that keeps one repository open, so commands sent to it
+ *  pay neither JVM startup nor the reading of the repo. It listens on
+ *  the Unix-domain socket SOCKET in .gitlet, and Client forwards the
+ *  command line of each command to it.
+ *
+ *  A request is the number of arguments and then each argument, as
+ *  MetaStore strings; the reply is what the command prints, in frames
+ *  that each name the client's standard output or error and give a
+ *  length, after which the connection is closed. A request with more
+ *  arguments, or a longer one, than a command line can hold is
+ *  dropped unanswered.
+ *
+ *  Each connection is served on a thread of its own, from a cached
+ *  pool of platform threads. Virtual threads would be cheaper, but the
+ *  project targets Java 17, which does not have them; as the threads
+ *  only wait for the one command running, a platform thread costs
+ *  little more than its stack. Commands run one at a time on the one
+ *  open Gitlet, which reads HEAD, the index and the refs again before
+ *  each, since other processes may have changed them, and saves after
+ *  each, so every change is on disk before its reply ends. "shutdown"
+ *  stops the server. Started with --watch, it also watches the working
+ *  files, so that status and the checks for untracked files in the way
+ *  look only at those changed since the last command.
+ *  @author Adam
+ */
+public final class Daemon {
+    /** Name of the socket in .gitlet. **/
+    static final String SOCKET = "daemon.sock";
+    /** Number of the client's standard output in a reply frame. **/
+    static final int STDOUT = 1;
+    /** Number of the client's standard error in a reply frame. **/
+    static final int STDERR = 2;
+    /** Most arguments a request may have, more than any command line
+     *  the system would pass to Client. **/
+    private static final int MAX_ARGS = 1 << 20;
+    /** Longest argument a request may have, in bytes: the longest the
+     *  system passes to a program. **/
+    private static final int MAX_ARG_BYTES = 128 << 10;
+
+    /** The open repo. **/
+    private final Gitlet _git;
+    /** The socket. **/
+    private final Path _path;
+    /** The listening channel. **/
+    private final ServerSocketChannel _server;
+    /** Threads serving connections. **/
+    private final ExecutorService _threads =
+            Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "gitlet-daemon");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** A server for GIT, listening on PATH.
+     * @param git git
+     * @param path path
+     **/
+    private Daemon(Gitlet git, Path path) throws IOException {
+        _git = git;
+        _path = path;
+        _server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        _server.bind(UnixDomainSocketAddress.of(path));
+    }
+
+    /** Serves the repository in the current directory until told to
+     *  shut down, watching its working files if ARGS is --watch.
+     * @param args args
+     **/
+    public static void main(String[] args) throws Exception {
+        Gitlet git = Gitlet.deserialize(Main.REPO);
+        if (git == null) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        Gitlet.serialize(git, Main.REPO);
+        Path path = Utils.join(Gitlet.GITLET_FOLDER, SOCKET).toPath();
+        if (Files.exists(path)) {
+            if (listening(path)) {
+                System.out.println("A daemon is already running.");
+                return;
+            }
+            Files.delete(path);
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            git.watch();
+        }
+        new Daemon(git, path).serve();
+    }
+
+    /** Accepts connections until the server is shut down. **/
+    private void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = _server.accept();
+                } catch (ClosedChannelException excp) {
+                    break;
+                }
+                _threads.execute(() -> handle(client));
+            }
+        } finally {
+            _threads.shutdown();
+            Files.deleteIfExists(_path);
+        }
+    }
+    /** Reads a command from CLIENT, runs it and sends back its output.
+     * @param client client
+     **/
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(channel));
+            int count = in.readInt();
+            if (count < 0 || count > MAX_ARGS) {
+                throw new IOException("bad argument count " + count);
+            }
+            String[] args = new String[count];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readArg(in);
+            }
+            DataOutputStream reply = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            PrintStream out = stream(reply, STDOUT);
+            PrintStream err = stream(reply, STDERR);
+            run(args, out, err);
+            out.flush();
+            err.flush();
+        } catch (IOException excp) {
+            return;
+        }
+    }
+    /** Reads one argument of a request from IN, which is rejected if
+     *  its length is out of range. The bytes are read as they come, so
+     *  a length the client never sends costs nothing.
+     * @param in in
+     * @return String
+     **/
+    private static String readArg(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_ARG_BYTES) {
+            throw new IOException("bad argument length " + length);
+        }
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    /** Returns a stream printing to client stream STREAM through REPLY.
+     * @param reply reply
+     * @param stream stream
+     * @return PrintStream
+     **/
+    private static PrintStream stream(DataOutputStream reply, int stream) {
+        return new PrintStream(new BufferedOutputStream(
+                new Frames(reply, stream)), false, StandardCharsets.UTF_8);
+    }
+    /** Runs the command ARGS, printing what it reports to OUT and any
+     *  statistics or failure to ERR.
+     * @param args args
+     * @param out out
+     * @param err err
+     **/
+    private synchronized void run(String[] args, PrintStream out,
+                                  PrintStream err) throws IOException {
+        if (args.length > 0 && args[0].equals("shutdown")) {
+            _server.close();
+            return;
+        }
+        try {
+            _git.reopen();
+            Main.dispatch(_git, args, out, err);
+            Gitlet.serialize(_git, Main.REPO);
+        } catch (Exception excp) {
+            _git.abort();
+            err.println(excp);
+        }
+    }
+    /** Returns true if a daemon is listening on PATH.
+     * @param path path
+     * @return boolean
+     **/
+    private static boolean listening(Path path) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(path)).close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** A stream whose bytes go to the client in frames: the number of
+     *  the client stream they belong on, their length, then the bytes.
+     **/
+    private static final class Frames extends OutputStream {
+        /** The reply to the client, shared by both streams. **/
+        private final DataOutputStream _reply;
+        /** STDOUT or STDERR. **/
+        private final int _stream;
+
+        /** A stream of frames for client stream STREAM, written to REPLY.
+         * @param reply reply
+         * @param stream stream
+         **/
+        Frames(DataOutputStream reply, int stream) {
+            _reply = reply;
+            _stream = stream;
+        }
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (_reply) {
+                _reply.writeByte(_stream);
+                _reply.writeInt(len);
+                _reply.write(b, off, len);
+            }
+        }
+        @Override
+        public void flush() throws IOException {
+            _reply.flush();
+        }
+    }
+}
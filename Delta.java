@@ -0,0 +1,197 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/** Binary deltas between two versions of a file. A delta is the base
+ *  and target lengths followed by copy instructions, which reuse a run
+ *  of the base, and insert instructions, which carry new bytes. Runs
+ *  are found by hashing the base in fixed blocks and sliding a rolling
+ *  hash over the target.
+ *  @author Adam
+ */
+final class Delta {
+    /** Bytes per block of the base that is indexed. **/
+    private static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. **/
+    private static final int PRIME = 31;
+    /** PRIME to the power BLOCK - 1, for removing a byte from a hash. **/
+    private static final int TOP;
+    /** Instruction that copies a run of the base. **/
+    private static final int COPY = 0;
+    /** Instruction that inserts literal bytes. **/
+    private static final int INSERT = 1;
+
+    static {
+        int top = 1;
+        for (int i = 1; i < BLOCK; i++) {
+            top *= PRIME;
+        }
+        TOP = top;
+    }
+
+    /** Not instantiable. **/
+    private Delta() {
+    }
+
+    /** Returns a delta that rebuilds TARGET from BASE.
+     * @param base base
+     * @param target target
+     * @return byte[]
+     **/
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int blocks = base.length / BLOCK;
+        if (blocks == 0 || target.length < BLOCK) {
+            insert(out, target, 0, target.length);
+            return out.toByteArray();
+        }
+        int mask = Integer.highestOneBit(blocks * 2) * 2 - 1;
+        int[] table = new int[mask + 1];
+        for (int i = blocks - 1; i >= 0; i--) {
+            table[hash(base, i * BLOCK) & mask] = i * BLOCK + 1;
+        }
+        int pending = 0;
+        int i = 0;
+        int h = hash(target, 0);
+        while (i + BLOCK <= target.length) {
+            int s = table[h & mask] - 1;
+            if (s >= 0 && equal(base, s, target, i, BLOCK)) {
+                int t = i;
+                while (t > pending && s > 0 && base[s - 1] == target[t - 1]) {
+                    s--;
+                    t--;
+                }
+                int len = i - t + BLOCK;
+                while (s + len < base.length && t + len < target.length
+                        && base[s + len] == target[t + len]) {
+                    len++;
+                }
+                insert(out, target, pending, t);
+                out.write(COPY);
+                writeVarint(out, s);
+                writeVarint(out, len);
+                i = t + len;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * TOP) * PRIME + target[i + BLOCK];
+                }
+                i++;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+    /** Returns the target rebuilt by applying DELTA to BASE.
+     * @param base base
+     * @param delta delta
+     * @return byte[]
+     **/
+    static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IOException("delta does not match its base");
+        }
+        byte[] target = new byte[(int) readVarint(delta, pos)];
+        int t = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]++];
+            if (op == COPY) {
+                int s = (int) readVarint(delta, pos);
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(base, s, target, t, len);
+                t += len;
+            } else if (op == INSERT) {
+                int len = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, t, len);
+                pos[0] += len;
+                t += len;
+            } else {
+                throw new IOException("corrupt delta");
+            }
+        }
+        if (t != target.length) {
+            throw new IOException("corrupt delta");
+        }
+        return target;
+    }
+
+    /** Writes an instruction inserting BYTES[FROM..TO) to OUT.
+     * @param out out
+     * @param bytes bytes
+     * @param from from
+     * @param to to
+     **/
+    private static void insert(ByteArrayOutputStream out, byte[] bytes,
+                               int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(bytes, from, to - from);
+        }
+    }
+    /** Returns the hash of the block of BYTES starting at START.
+     * @param bytes bytes
+     * @param start start
+     * @return int
+     **/
+    private static int hash(byte[] bytes, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * PRIME + bytes[i];
+        }
+        return h;
+    }
+    /** Returns true if A[AI..AI+LEN) equals B[BI..BI+LEN).
+     * @param a a
+     * @param ai ai
+     * @param b b
+     * @param bi bi
+     * @param len len
+     * @return boolean
+     **/
+    private static boolean equal(byte[] a, int ai, byte[] b, int bi,
+                                 int len) {
+        if (ai + len > a.length) {
+            return false;
+        }
+        for (int k = 0; k < len; k++) {
+            if (a[ai + k] != b[bi + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    /** Writes V to OUT, seven bits per byte.
+     * @param out out
+     * @param v v
+     **/
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while (v >= 0x80) {
+            out.write((int) (v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+    /** Reads a varint from BYTES at POS[0] and advances POS[0].
+     * @param bytes bytes
+     * @param pos pos
+     * @return long
+     **/
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long v = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = bytes[pos[0]++];
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Unified diffs of two versions of a file, and three-way merges.
+ *
+ *  Each version is streamed once to hash its lines, and only a 64-bit
+ *  FNV-1a hash per line is kept; two lines are taken to be equal when
+ *  their hashes are. The hashes are numbered densely and matched, or
+ *  merged, by LineDiff. The versions are then streamed a second time,
+ *  in step with the hunks or merged chunks, to copy out just the lines
+ *  needed, as raw bytes. No line is ever made a String, so the memory
+ *  a diff or merge takes goes with the number of lines in the files,
+ *  not their size.
+ *  @author Adam
+ */
+final class FileDiff {
+    /** Unchanged lines shown around each change. **/
+    static final int CONTEXT = 3;
+    /** Starting value of a line hash. **/
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    /** Multiplier of a line hash. **/
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Written after a last line that has no line terminator. **/
+    private static final byte[] NO_NEWLINE =
+            "\n\\ No newline at end of file\n"
+                    .getBytes(StandardCharsets.UTF_8);
+    /** Marker opening the current side of a conflict. **/
+    static final String OURS = "<<<<<<< HEAD\n";
+    /** Marker between the two sides of a conflict. **/
+    static final String SPLIT = "=======\n";
+    /** Marker closing the given side of a conflict. **/
+    static final String THEIRS = ">>>>>>>\n";
+    /** Written after a conflict side whose last line has no line
+     *  terminator, so the marker after it starts a line. **/
+    private static final byte[] NEWLINE = {'\n'};
+    /** Written after any other last line that has none. **/
+    private static final byte[] NOTHING = {};
+
+    /** One version of a file, which can be read more than once. **/
+    interface Source {
+        /** Returns a new stream of the contents. **/
+        InputStream open() throws IOException;
+    }
+
+    /** Not instantiable. **/
+    private FileDiff() {
+    }
+
+    /** Writes to OUT the diff of PATH from OLD to NEW, where a null
+     *  version is a file that does not exist. Writes nothing if the
+     *  two have the same lines.
+     * @param path path
+     * @param old old
+     * @param now new
+     * @param out out
+     **/
+    static void write(String path, Source old, Source now,
+                      OutputStream out) throws IOException {
+        Hashes a = hash(old);
+        Hashes b = hash(now);
+        if (a._binary || b._binary) {
+            header(path, old, now, out);
+            print(out, "Binary files " + (old == null ? "/dev/null"
+                    : "a/" + path) + " and " + (now == null ? "/dev/null"
+                    : "b/" + path) + " differ\n");
+            return;
+        }
+        int[][] ids = intern(a, b);
+        List<int[]> changes = changes(LineDiff.match(ids[0], ids[1]),
+                b._count);
+        if (changes.isEmpty()) {
+            return;
+        }
+        header(path, old, now, out);
+        try (LineReader ra = new LineReader(old);
+             LineReader rb = new LineReader(now)) {
+            int first = 0;
+            while (first < changes.size()) {
+                int last = first;
+                while (last + 1 < changes.size()
+                        && changes.get(last + 1)[0] - changes.get(last)[1]
+                        <= 2 * CONTEXT) {
+                    last += 1;
+                }
+                hunk(changes.subList(first, last + 1), a._count, ra, rb,
+                        out);
+                first = last + 1;
+            }
+        }
+    }
+
+    /** Merges OURS and THEIRS, both changed from BASE, into OUT, and
+     *  returns true if any chunk conflicted. Conflicting chunks are
+     *  written between conflict markers. A null version is empty.
+     * @param base base
+     * @param ours ours
+     * @param theirs theirs
+     * @param out out
+     * @return boolean
+     **/
+    static boolean merge(Source base, Source ours, Source theirs,
+                         OutputStream out) throws IOException {
+        int[][] ids = intern(hash(base), hash(ours), hash(theirs));
+        try (LineReader ro = new LineReader(base);
+             LineReader ra = new LineReader(ours);
+             LineReader rb = new LineReader(theirs)) {
+            return LineDiff.merge(ids[0], ids[1], ids[2],
+                    new LineDiff.Merged() {
+                        @Override
+                        public void base(int from, int to)
+                                throws IOException {
+                            ro.skipTo(from);
+                            ro.copyTo(to, -1, NOTHING, out);
+                        }
+                        @Override
+                        public void ours(int from, int to)
+                                throws IOException {
+                            ra.skipTo(from);
+                            ra.copyTo(to, -1, NOTHING, out);
+                        }
+                        @Override
+                        public void theirs(int from, int to)
+                                throws IOException {
+                            rb.skipTo(from);
+                            rb.copyTo(to, -1, NOTHING, out);
+                        }
+                        @Override
+                        public void conflict(int aFrom, int aTo, int bFrom,
+                                             int bTo) throws IOException {
+                            print(out, OURS);
+                            ra.skipTo(aFrom);
+                            ra.copyTo(aTo, -1, NEWLINE, out);
+                            print(out, SPLIT);
+                            rb.skipTo(bFrom);
+                            rb.copyTo(bTo, -1, NEWLINE, out);
+                            print(out, THEIRS);
+                        }
+                    });
+        }
+    }
+
+    /** Returns the line hashes of SOURCE, which may be null.
+     * @param source source
+     * @return Hashes
+     **/
+    private static Hashes hash(Source source) throws IOException {
+        Hashes result = new Hashes();
+        if (source == null) {
+            return result;
+        }
+        byte[] buffer = new byte[BlobStore.BUFFER_SIZE];
+        long h = FNV_BASIS;
+        boolean open = false;
+        try (InputStream in = source.open()) {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                for (int i = 0; i < n; i++) {
+                    byte c = buffer[i];
+                    h = (h ^ (c & 0xff)) * FNV_PRIME;
+                    open = true;
+                    if (c == '\n') {
+                        result.add(h);
+                        h = FNV_BASIS;
+                        open = false;
+                    } else if (c == 0) {
+                        result._binary = true;
+                    }
+                }
+            }
+        }
+        if (open) {
+            result.add(h);
+        }
+        return result;
+    }
+    /** Returns the lines of each of SIDES as ints, equal ints standing
+     *  for equal hashes. The numbering is kept in an open-addressed
+     *  table, so no hash is boxed.
+     * @param sides sides
+     * @return int[][]
+     **/
+    private static int[][] intern(Hashes... sides) {
+        int total = 0;
+        for (Hashes side : sides) {
+            total += side._count;
+        }
+        int capacity = 1;
+        while (capacity < 2 * total) {
+            capacity <<= 1;
+        }
+        long[] keys = new long[capacity];
+        int[] values = new int[capacity];
+        int next = 1;
+        int[][] result = new int[sides.length][];
+        for (int s = 0; s < sides.length; s++) {
+            result[s] = new int[sides[s]._count];
+            for (int i = 0; i < sides[s]._count; i++) {
+                long h = sides[s]._hashes[i];
+                int slot = Long.hashCode(h * 0x9e3779b97f4a7c15L)
+                        & (capacity - 1);
+                while (values[slot] != 0 && keys[slot] != h) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                if (values[slot] == 0) {
+                    keys[slot] = h;
+                    values[slot] = next++;
+                }
+                result[s][i] = values[slot];
+            }
+        }
+        return result;
+    }
+    /** Returns the changes MATCHES makes of one sequence into another
+     *  of length M, as {old start, old end, new start, new end}, in
+     *  order.
+     * @param matches matches
+     * @param m m
+     * @return List
+     **/
+    private static List<int[]> changes(int[] matches, int m) {
+        ArrayList<int[]> changes = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < matches.length || j < m) {
+            if (i < matches.length && matches[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int start = i;
+            while (i < matches.length && matches[i] < 0) {
+                i += 1;
+            }
+            int end = i < matches.length ? matches[i] : m;
+            changes.add(new int[] {start, i, j, end});
+            j = end;
+        }
+        return changes;
+    }
+    /** Writes the hunk holding CHANGES, whose old file has N lines,
+     *  copying its lines from RA and RB to OUT.
+     * @param changes changes
+     * @param n n
+     * @param ra ra
+     * @param rb rb
+     * @param out out
+     **/
+    private static void hunk(List<int[]> changes, int n, LineReader ra,
+                             LineReader rb, OutputStream out)
+            throws IOException {
+        int[] first = changes.get(0);
+        int[] last = changes.get(changes.size() - 1);
+        int aStart = Math.max(0, first[0] - CONTEXT);
+        int bStart = first[2] - (first[0] - aStart);
+        int aEnd = Math.min(n, last[1] + CONTEXT);
+        int bEnd = last[3] + (aEnd - last[1]);
+        print(out, "@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd)
+                + " @@\n");
+        ra.skipTo(aStart);
+        for (int[] c : changes) {
+            ra.copyTo(c[0], ' ', out);
+            ra.copyTo(c[1], '-', out);
+            rb.skipTo(c[2]);
+            rb.copyTo(c[3], '+', out);
+        }
+        ra.copyTo(aEnd, ' ', out);
+    }
+    /** Returns the hunk header range of lines [START, END).
+     * @param start start
+     * @param end end
+     * @return String
+     **/
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+    /** Writes the header of the diff of PATH from OLD to NEW to OUT.
+     * @param path path
+     * @param old old
+     * @param now now
+     * @param out out
+     **/
+    private static void header(String path, Source old, Source now,
+                               OutputStream out) throws IOException {
+        print(out, "diff --gitlet a/" + path + " b/" + path + "\n"
+                + "--- " + (old == null ? "/dev/null" : "a/" + path) + "\n"
+                + "+++ " + (now == null ? "/dev/null" : "b/" + path)
+                + "\n");
+    }
+    /** Writes TEXT to OUT.
+     * @param out out
+     * @param text text
+     **/
+    private static void print(OutputStream out, String text)
+            throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The line hashes of one version. **/
+    private static final class Hashes {
+        /** Hash of each line, in order. **/
+        private long[] _hashes = new long[16];
+        /** Number of lines. **/
+        private int _count;
+        /** True if the version holds a zero byte. **/
+        private boolean _binary;
+
+        /** Adds a line whose hash is H.
+         * @param h h
+         **/
+        void add(long h) {
+            if (_count == _hashes.length) {
+                _hashes = Arrays.copyOf(_hashes, 2 * _count);
+            }
+            _hashes[_count++] = h;
+        }
+    }
+
+    /** Reads a version a line at a time, from the first line on. **/
+    private static final class LineReader implements AutoCloseable {
+        /** The contents. **/
+        private final InputStream _in;
+        /** Bytes read but not yet used. **/
+        private final byte[] _buffer = new byte[BlobStore.BUFFER_SIZE];
+        /** Position of the next byte in _buffer. **/
+        private int _pos;
+        /** Number of bytes in _buffer. **/
+        private int _limit;
+        /** Number of the next line. **/
+        private int _line;
+
+        /** Reads SOURCE, which may be null for an empty version.
+         * @param source source
+         **/
+        LineReader(Source source) throws IOException {
+            _in = source == null ? InputStream.nullInputStream()
+                    : source.open();
+        }
+        /** Skips lines until the next is line LINE.
+         * @param line line
+         **/
+        void skipTo(int line) throws IOException {
+            while (_line < line) {
+                int c = next();
+                while (c != '\n' && c != -1) {
+                    c = next();
+                }
+                _line += 1;
+            }
+        }
+        /** Writes each line before line LINE to OUT, after PREFIX.
+         * @param line line
+         * @param prefix prefix
+         * @param out out
+         **/
+        void copyTo(int line, char prefix, OutputStream out)
+                throws IOException {
+            copyTo(line, prefix, NO_NEWLINE, out);
+        }
+        /** Writes each line before line LINE to OUT, after PREFIX unless
+         *  it is negative, and then UNTERMINATED if the last line copied
+         *  has no line terminator.
+         * @param line line
+         * @param prefix prefix
+         * @param unterminated unterminated
+         * @param out out
+         **/
+        void copyTo(int line, int prefix, byte[] unterminated,
+                    OutputStream out) throws IOException {
+            while (_line < line) {
+                if (prefix >= 0) {
+                    out.write(prefix);
+                }
+                while (true) {
+                    int start = _pos;
+                    while (_pos < _limit && _buffer[_pos] != '\n') {
+                        _pos += 1;
+                    }
+                    if (_pos < _limit) {
+                        _pos += 1;
+                        out.write(_buffer, start, _pos - start);
+                        break;
+                    }
+                    out.write(_buffer, start, _pos - start);
+                    if (!fill()) {
+                        out.write(unterminated);
+                        break;
+                    }
+                }
+                _line += 1;
+            }
+        }
+        /** Returns the next byte, or -1 at the end. **/
+        private int next() throws IOException {
+            if (_pos == _limit && !fill()) {
+                return -1;
+            }
+            return _buffer[_pos++] & 0xff;
+        }
+        /** Reads more bytes into the empty buffer, returning false at
+         *  the end. **/
+        private boolean fill() throws IOException {
+            _pos = 0;
+            _limit = Math.max(0, _in.read(_buffer));
+            return _limit > 0;
+        }
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+    }
+}
@@ -1,299 +1,537 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
-import java.io.FileInputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 /** A repository that helps store files written in the directory.
  *  @author Adam
  */
-public class Gitlet implements Serializable {
+public class Gitlet {
     /** The directory for all files. **/
     static final File CWD = new File(System.getProperty("user.dir"));
     /** Folder for all files created by the repo. **/
-    static final File GITLET_FOLDER = new File(".gitlet");
-    /** Main folder for all staging files. **/
-    static final File STAGING_FOLDER = new File(".gitlet/staging");
+    static final File GITLET_FOLDER = Utils.join(CWD, ".gitlet");
     /** Main folder for all blob files. **/
-    static final File BLOB_FOLDER = new File(".gitlet/blobs");
+    static final File BLOB_FOLDER = Utils.join(GITLET_FOLDER, "blobs");
+    /** Commits, refs, HEAD and the staging index on disk. **/
+    private MetaStore _store;
+    /** Contents of every committed file. **/
+    private BlobStore _blobs;
+    /** What each tracked working file looked like when last hashed. **/
+    private StatCache _stats = new StatCache();
+    /** The working files. **/
+    private WorkTree _tree = new WorkTree(CWD, _stats);
     /** Main data structure for staged files. **/
     private HashMap<String, String> _stagedFiles;
     /** Main data structure for removed files. **/
-    private ArrayList<String> _removeFiles;
-    /** Main data structure to retain the blob files. **/
-    private HashMap<String, String> _blobFiles;
-    /** Main data structure for all the commits. **/
-    private HashMap<String, Commit> _commits;
-    /** Main data structure to keep track of all branches. **/
-    private HashMap<String, LinkedList<Commit>> _branches;
+    private LinkedHashSet<String> _removeFiles;
     /** Name of current branch. **/
     private String _keyToCurrBranch;
-    /** Pointer to main branch. **/
-    private Commit _master;
     /** Pointer to the head commit. **/
-    private Commit _head;
-    /** Checks if merge encounters conflict. **/
-    private boolean checker = false;
+    private CommitRecord _head;
+    /** Snapshots already read or made, by root tree id. A snapshot
+     *  made from its parent's shares all its unchanged entries. **/
+    private HashMap<String, PathMap> _snapshots = new HashMap<>();
+    /** Staged files as last read from or written to disk. **/
+    private HashMap<String, String> _savedStaged = new HashMap<>();
+    /** Removed files as last read from or written to disk. **/
+    private LinkedHashSet<String> _savedRemoved = new LinkedHashSet<>();
+    /** Current branch as last read from or written to disk. **/
+    private String _savedBranch;
+    /** Paths the sparse checkout materializes, read on first use. **/
+    private PathSpec _sparse;
+    /** Where commands print what they report. **/
+    private PrintStream _out = System.out;
+    /** Where statistics are printed. **/
+    private PrintStream _err = System.err;
     /** Constructor for Gitlet. **/
     public Gitlet() {
         _head = null;
-        _master = null;
     }
     /** Setting up the folders for the repo. **/
     public static void setUpPersistence() throws IOException {
         GITLET_FOLDER.mkdir();
-        STAGING_FOLDER.mkdir();
         BLOB_FOLDER.mkdir();
-        Commit.COMMIT_FOLDER.mkdir();
     }
-    /** Saves all files in the repo.
+    /** Saves the parts of the repo the command changed. Commits and
+     *  branch refs are already in the store's journal by now, so this
+     *  adds HEAD and the staging index when they differ from what was
+     *  read, then commits the journal, which makes the command's
+     *  changes durable all at once.
      * @param git git
-     * @param name name
+     * @param name name of the old whole-repo file, no longer written
      **/
     public static void serialize(Gitlet git, String name) throws IOException {
-        if (git != null) {
-            File file = new File(name);
-            FileOutputStream fileOutput = new FileOutputStream(file);
-            ObjectOutputStream output = new ObjectOutputStream(fileOutput);
-            output.writeObject(git);
-            output.close();
-            fileOutput.close();
+        if (git != null && git._store != null) {
+            git.save();
         }
     }
-    /** Reads the saved files from the git repo.
-     * @param  filename filename
+    /** Opens the repo in the current directory. Only HEAD, the staging
+     *  index and the head commit are read here; other commits and refs
+     *  are read from the store when a command asks for them.
+     * @param  filename name of the old whole-repo file, no longer read
      * @return Gitlet file
      **/
     public static Gitlet deserialize(String filename)
             throws ClassNotFoundException {
-        Gitlet gitlet = null;
-        File file = new File(filename);
+        if (!MetaStore.exists(GITLET_FOLDER)) {
+            return null;
+        }
         try {
-            if (file.exists()) {
-                FileInputStream fileInput = new FileInputStream(filename);
-                ObjectInputStream inObject = new ObjectInputStream(fileInput);
-                gitlet = (Gitlet) inObject.readObject();
-                inObject.close();
-                fileInput.close();
-            }
+            Gitlet gitlet = new Gitlet();
+            gitlet.load();
             return gitlet;
         } catch (IOException exception) {
-            return null;
+            throw new UncheckedIOException(exception);
         }
     }
+    /** Reads HEAD, the staging index and the head commit, after
+     *  finishing whatever a crashed command left undone. **/
+    private void load() throws IOException {
+        _store = new MetaStore(GITLET_FOLDER);
+        _store.recover();
+        _blobs = new BlobStore(BLOB_FOLDER, _store.readCodec(),
+                _store.journal());
+        read();
+    }
+    /** Readies the repo for another command in a process that keeps
+     *  it open, reading again whatever other processes may have changed
+     *  but keeping the commits, trees and snapshots already read. **/
+    void reopen() throws IOException {
+        _store.recover();
+        _store.refresh();
+        _blobs.refresh();
+        _sparse = null;
+        read();
+        _tree.sync();
+    }
+    /** Makes the commands that follow print to OUT, and statistics to
+     *  ERR.
+     * @param out out
+     * @param err err
+     **/
+    void output(PrintStream out, PrintStream err) {
+        _out = out;
+        _err = err;
+    }
+    /** Watches the working files, for a process that keeps the repo
+     *  open, so status and the checks for untracked files look only at
+     *  files changed since the last command. **/
+    void watch() throws IOException {
+        _tree.watch();
+    }
+    /** Drops whatever a command that failed changed but did not save,
+     *  and releases its locks. **/
+    void abort() {
+        _store.abort();
+    }
+    /** Reads HEAD, the staging index and the head commit. **/
+    private void read() throws IOException {
+        _keyToCurrBranch = _store.readHead();
+        _stagedFiles = new HashMap<>();
+        _removeFiles = new LinkedHashSet<>();
+        _store.readIndex(_stagedFiles, _removeFiles, _stats);
+        _head = _store.readCommit(_store.readRef(_keyToCurrBranch));
+        _savedBranch = _keyToCurrBranch;
+        _savedStaged = new HashMap<>(_stagedFiles);
+        _savedRemoved = new LinkedHashSet<>(_removeFiles);
+    }
+    /** Locks what a command changing the staging index needs before
+     *  it reads anything it will write back: HEAD if HEAD, then the
+     *  index, then the current branch if BRANCH, then the commit graph
+     *  and message index if COMMITS, for a command that makes commits.
+     *  If another command changed any of them since the repo was
+     *  opened, they are read again.
+     * @param head head
+     * @param branch branch
+     * @param commits commits
+     **/
+    private void lockForUpdate(boolean head, boolean branch,
+                               boolean commits) throws IOException {
+        if (head) {
+            _store.lockHead();
+        }
+        boolean stale = _store.lockIndex();
+        String current = _store.readHead();
+        if (branch) {
+            _store.lockRef(current);
+        }
+        if (commits) {
+            _store.lockGraph();
+        }
+        if (stale || !current.equals(_keyToCurrBranch)
+                || !Objects.equals(_store.readRef(current),
+                        _head.getSha1())) {
+            read();
+        }
+    }
+    /** Writes back HEAD and the staging index if changed, commits the
+     *  journal and releases the command's locks. A change to nothing
+     *  but the cached stats is only written if no other command holds
+     *  or has since replaced the index. **/
+    private void save() throws IOException {
+        try {
+            if (!_keyToCurrBranch.equals(_savedBranch)) {
+                _store.writeHead(_keyToCurrBranch);
+                _savedBranch = _keyToCurrBranch;
+            }
+            Map<String, String> tracked = files(_head);
+            _stats.retain(s -> _stagedFiles.containsKey(s)
+                    || tracked.containsKey(s));
+            if (!_stagedFiles.equals(_savedStaged)
+                    || !_removeFiles.equals(_savedRemoved)
+                    || (_stats.isDirty() && _store.tryLockIndex())) {
+                _store.writeIndex(_stagedFiles, _removeFiles, _stats);
+                _savedStaged = new HashMap<>(_stagedFiles);
+                _savedRemoved = new LinkedHashSet<>(_removeFiles);
+            }
+            _store.commit();
+        } finally {
+            _store.unlock();
+        }
+        if (Boolean.getBoolean("gitlet.lockstats")) {
+            _err.println(Locks.stats());
+        }
+        if (Boolean.getBoolean("gitlet.cachestats") && _blobs != null) {
+            _err.println(_blobs.cacheStats());
+        }
+    }
+    /** Writes blob ID to FILE, the working copy of PATH, and caches
+     *  its stat so the next scan need not read it back.
+     * @param path path
+     * @param file file
+     * @param id id
+     **/
+    private void writeFile(String path, File file, String id)
+            throws IOException {
+        _blobs.checkout(id, file);
+        _stats.record(path, file, id);
+    }
+    /** Returns every file in the snapshot of COMMIT mapped to its blob
+     *  id, reading its trees the first time it is asked for.
+     * @param commit commit
+     * @return Map
+     **/
+    private PathMap files(CommitRecord commit) throws IOException {
+        PathMap files = _snapshots.get(commit.getTree());
+        if (files == null) {
+            HashMap<String, String> flat = new HashMap<>();
+            Tree.flatten(_store, commit.getTree(), "", flat);
+            files = PathMap.of(flat);
+            _snapshots.put(commit.getTree(), files);
+        }
+        return files;
+    }
+    /** Writes the trees for BASE with CHANGES applied, remembering the
+     *  snapshot as BASE's with the same changes, and returns the id of
+     *  the new root tree.
+     * @param base base
+     * @param changes changes
+     * @return String
+     **/
+    private String applyChanges(CommitRecord base,
+                                Map<String, String> changes)
+            throws IOException {
+        String tree = Tree.apply(_store, base.getTree(), changes);
+        _snapshots.putIfAbsent(tree, files(base).apply(changes));
+        return tree;
+    }
+    /** Returns the name new commits are recorded under: the
+     *  gitlet.author property if it is set, else the user's login. **/
+    private static String author() {
+        return System.getProperty("gitlet.author",
+                System.getProperty("user.name"));
+    }
+    /** Returns the tip commit of BRANCH, or if there is no such branch,
+     *  the commit BRANCH is a unique id prefix of, or null.
+     * @param branch branch
+     * @return CommitRecord
+     **/
+    private CommitRecord tip(String branch) throws IOException {
+        String id = _store.readRef(branch);
+        if (id == null) {
+            List<String> matches = _store.resolveCommit(branch);
+            id = matches.size() == 1 ? matches.get(0) : null;
+        }
+        return _store.readCommit(id);
+    }
+    /** Returns the id of the commit ARG names, in full or by a unique
+     *  prefix, or null after saying why there is none.
+     * @param arg arg
+     * @return String
+     **/
+    private String commitId(String arg) throws IOException {
+        List<String> matches = _store.resolveCommit(arg);
+        if (matches.size() == 1) {
+            return matches.get(0);
+        }
+        if (matches.isEmpty()) {
+            _out.println("No commit with that id exists.");
+        } else {
+            _out.println("Commit id " + arg + " is ambiguous.");
+        }
+        return null;
+    }
     /** Initializes all variables for the repo.
      * @param  args args
      **/
     public void init(String[] args) throws IOException, ParseException {
-        File gitlet = new File(".gitlet");
-        if (!gitlet.exists()) {
+        if (!GITLET_FOLDER.exists()) {
             setUpPersistence();
-            Commit initial = new Commit(new Date(0),
-                    "initial commit", new HashMap<>(), null);
-            _commits = new HashMap<>();
+            _store = new MetaStore(GITLET_FOLDER);
+            Codec codec = Codec.named(System.getProperty("gitlet.codec",
+                    Codec.DEFAULT.name()));
+            _store.writeCodec(codec);
+            _blobs = new BlobStore(BLOB_FOLDER, codec, _store.journal());
+            _store.appendTree(Tree.EMPTY);
+            _store.lockGraph();
+            CommitRecord initial = new CommitRecord(0, null,
+                    "initial commit", Tree.EMPTY.getSha1());
+            _store.appendCommit(initial);
             _keyToCurrBranch = "master";
-            _commits.put(initial.getSha1(),  initial);
             _stagedFiles = new HashMap<>();
-            _blobFiles = new HashMap<>();
-            _master = initial;
             _head = initial;
-            _removeFiles = new ArrayList<>();
-            _branches = new HashMap<>();
-            _commits.put(initial.getSha1(), initial);
-            if (_branches.get(_keyToCurrBranch) != null) {
-                _branches.get(_keyToCurrBranch).add(initial);
-            } else {
-                LinkedList<Commit> commitLink = new LinkedList<>();
-                commitLink.add(initial);
-                _branches.put(_keyToCurrBranch, commitLink);
-            }
+            _removeFiles = new LinkedHashSet<>();
+            _store.writeRef(_keyToCurrBranch, initial.getSha1());
         } else {
-            System.out.println("A Gitlet version-control "
+            _out.println("A Gitlet version-control "
                     + "system already exists in the current directory.");
 
         }
     }
-    /** Adds files to the staging area.
+    /** Stages files for the next commit. Takes any number of paths,
+     *  each a file, a directory standing for every file below it, or a
+     *  glob; "." and -A stand for the whole working tree, including
+     *  the removal of tracked files that are gone. Nothing is staged
+     *  if any path matches no file.
      * @param  args args
      **/
     public void add(String[] args) throws IOException {
-        File actualFile = Utils.join(CWD, args[1]);
-        if (!actualFile.exists()) {
-            System.out.println("File does not exist");
+        lockForUpdate(false, false, false);
+        LinkedHashSet<String> paths = new LinkedHashSet<>();
+        List<String> working = null;
+        boolean all = false;
+        for (int i = 1; i < args.length; i++) {
+            String path = _tree.normalize(args[i]);
+            if (!PathSpec.isGlob(args[i]) && _tree.file(path).isFile()) {
+                paths.add(path);
+                continue;
+            }
+            if (working == null) {
+                working = _tree.files();
+            }
+            all |= args[i].equals("-A") || path.isEmpty();
+            List<String> matched = all ? working : expand(args[i], working);
+            if (matched.isEmpty()) {
+                _out.println("File does not exist");
+                return;
+            }
+            paths.addAll(matched);
+        }
+        ArrayList<String> gone = new ArrayList<>();
+        if (all) {
+            for (String s : files(_head).keySet()) {
+                if (!paths.contains(s) && materialized(s)) {
+                    gone.add(s);
+                }
+            }
+        }
+        String blocked = blocked(paths, gone);
+        if (blocked != null) {
+            _out.println("There is a tracked file in the way of " + blocked
+                    + "; remove it first.");
             return;
         }
-        if (_removeFiles.contains(args[1])) {
-            _removeFiles.remove(args[1]);
-        }
-        File stagingFile = Utils.join(STAGING_FOLDER, args[1]);
-        stagingFile.createNewFile();
-        _stagedFiles.put(args[1], actualFile.getPath());
-        if (_head.getFiles().containsKey(args[1])) {
-            String pathway = _head.getFiles().get(args[1]);
-            File check = new File(pathway);
-            if (new File(args[1]).exists() && new File(".gitlet/blobs/"
-                    + Utils.sha1(Utils.readContentsAsString
-                    (new File(args[1])))).exists()) {
-                if (Utils.readContentsAsString(check)
-                        .equals(Utils.readContentsAsString(actualFile))) {
-                    _stagedFiles.remove(args[1]);
-                    return;
+        remove(gone);
+        stage(paths);
+    }
+    /** Returns the first of PATHS that a file tracked or staged, and not
+     *  being removed, would share a name with, as a directory on its way
+     *  or as a file below it, or null if there is none. A commit cannot
+     *  hold a file and a directory of the same name; GONE are tracked
+     *  files about to be removed as well.
+     * @param paths paths
+     * @param gone gone
+     * @return String
+     **/
+    private String blocked(Collection<String> paths,
+                           Collection<String> gone) throws IOException {
+        Map<String, String> head = files(_head);
+        HashSet<String> removed = new HashSet<>(_removeFiles);
+        removed.addAll(gone);
+        HashSet<String> stagedDirs = new HashSet<>();
+        for (String s : _stagedFiles.keySet()) {
+            for (int i = s.indexOf('/'); i >= 0; i = s.indexOf('/', i + 1)) {
+                stagedDirs.add(s.substring(0, i));
+            }
+        }
+        for (String path : paths) {
+            for (int i = path.indexOf('/'); i >= 0;
+                 i = path.indexOf('/', i + 1)) {
+                String dir = path.substring(0, i);
+                if (_stagedFiles.containsKey(dir)
+                        || head.containsKey(dir) && !removed.contains(dir)) {
+                    return path;
+                }
+            }
+            if (stagedDirs.contains(path)) {
+                return path;
+            }
+            Tree.Entry entry = Tree.find(_store, _head.getTree(), path);
+            if (entry != null && entry.isTree()) {
+                HashMap<String, String> below = new HashMap<>();
+                Tree.flatten(_store, entry.id(), path + "/", below);
+                if (!removed.containsAll(below.keySet())) {
+                    return path;
                 }
             }
         }
-
-        Utils.writeContents(stagingFile,
-                Utils.readContentsAsString(actualFile));
+        return null;
+    }
+    /** Stages each of PATHS, which must be working files, as it is now,
+     *  or unstages it if it matches the head commit. Staging writes the
+     *  file straight into the blob store and records its id in the
+     *  index, so a commit only has to name blobs already stored. The
+     *  files are hashed and stored in parallel.
+     * @param paths paths
+     **/
+    private void stage(Collection<String> paths) throws IOException {
+        Map<String, String> head = files(_head);
+        ArrayList<Callable<String>> tasks = new ArrayList<>();
+        for (String s : paths) {
+            File file = _tree.file(s);
+            String headId = head.get(s);
+            tasks.add(() -> {
+                String id = _stats.cached(s, file);
+                if (id == null || !id.equals(headId)) {
+                    id = _stats.refresh(s, file, () -> _blobs.store(file));
+                }
+                return id;
+            });
+        }
+        Iterator<String> ids = WorkTree.parallel(tasks).iterator();
+        for (String s : paths) {
+            String id = ids.next();
+            _removeFiles.remove(s);
+            if (id.equals(head.get(s))) {
+                _stagedFiles.remove(s);
+            } else {
+                _stagedFiles.put(s, id);
+            }
+        }
+    }
+    /** Returns the paths among CANDIDATES that ARG, a path as typed on
+     *  the command line, names: itself, every path below it if it is a
+     *  directory, or every path it matches if it is a glob.
+     * @param arg arg
+     * @param candidates candidates
+     * @return List
+     **/
+    private List<String> expand(String arg, Collection<String> candidates) {
+        PathSpec spec = new PathSpec(List.of(_tree.normalize(arg)));
+        ArrayList<String> result = new ArrayList<>();
+        for (String c : candidates) {
+            if (spec.matches(c)) {
+                result.add(c);
+            }
+        }
+        return result;
     }
     /** Adds files to the blob folder.
      * @param  args args
      **/
     public void commit(String[] args) throws IOException {
+        lockForUpdate(false, true, true);
         if (_stagedFiles.size() == 0 && _removeFiles.size() == 0) {
-            System.out.println("No changes added to the commit");
+            _out.println("No changes added to the commit");
             return;
         }
         if (args.length == 1 || args[1].equals("")) {
-            System.out.println("Please enter a commit message");
+            _out.println("Please enter a commit message");
             return;
         }
 
-        HashMap<String, String> files = new HashMap<>();
-        files.putAll(_head.getFiles());
-        for (String s : _stagedFiles.keySet()) {
-            File sFile = new File(_stagedFiles.get(s));
-            String id = Utils.sha1(Utils.readContentsAsString(sFile));
-            files.put(s, ".gitlet/blobs/" + id);
-            File blobFile = Utils.join(BLOB_FOLDER, id);
-            File currFile = Utils.join(STAGING_FOLDER, s);
-            String currString = Utils.readContentsAsString(currFile);
-            blobFile.createNewFile();
-            Utils.writeContents(blobFile, currString);
-        }
-        for (String s : _removeFiles) {
-            files.remove(s);
-        }
-        _removeFiles.clear();
-
-        Commit commit = new Commit(new Date(), args[1], files, _head);
-        if (_branches.get(_keyToCurrBranch) != null) {
-            _branches.get(_keyToCurrBranch).add(commit);
-        } else {
-            LinkedList<Commit> commitLink = new LinkedList<>();
-            commitLink.add(commit);
-            _branches.put(_keyToCurrBranch, commitLink);
-        }
-        for (String s : _stagedFiles.keySet()) {
-            File del = new File(".gitlet/staging/" + s);
-            del.delete();
-        }
-
-        _stagedFiles.clear();
-
-        _head = commit;
-        _commits.put(commit.getSha1(), commit);
+        HashMap<String, String> changes = new HashMap<>();
+        writeStagedBlobs(changes);
+        String tree = applyChanges(_head, changes);
+        CommitRecord commit = new CommitRecord(System.currentTimeMillis(),
+                author(), args[1], tree, _head.getSha1());
+        finishCommit(commit);
     }
-    /** Commit with merge and commit argument.
-     * @param  commit commit
+    /** Records every staged file in CHANGES, then every removed file as
+     *  null. Staged blobs are already in the store.
+     * @param changes changes
      **/
-    public void commitMerge(Commit commit) throws IOException {
-        HashMap<String, String> files = new HashMap<>();
-        files.putAll(_head.getFiles());
-        for (String s : _stagedFiles.keySet()) {
-            File sFile = new File(_stagedFiles.get(s));
-            String id = Utils.sha1(Utils.readContentsAsString(sFile));
-            files.put(s, ".gitlet/blobs/" + id);
-            File blobFile = Utils.join(BLOB_FOLDER, id);
-            File currFile = Utils.join(STAGING_FOLDER, s);
-            String currString = Utils.readContentsAsString(currFile);
-            blobFile.createNewFile();
-            Utils.writeContents(blobFile, currString);
-        }
+    private void writeStagedBlobs(HashMap<String, String> changes)
+            throws IOException {
+        changes.putAll(_stagedFiles);
         for (String s : _removeFiles) {
-            files.remove(s);
+            changes.put(s, null);
         }
         _removeFiles.clear();
-
-        if (_branches.get(_keyToCurrBranch) != null) {
-            _branches.get(_keyToCurrBranch).add(commit);
-        } else {
-            LinkedList<Commit> commitLink = new LinkedList<>();
-            commitLink.add(commit);
-            _branches.put(_keyToCurrBranch, commitLink);
-        }
-        for (String s : _stagedFiles.keySet()) {
-            File del = new File(".gitlet/staging/" + s);
-            del.delete();
-        }
-
+    }
+    /** Appends COMMIT to the store, moves the current branch to it and
+     *  clears the staging area.
+     * @param commit commit
+     **/
+    private void finishCommit(CommitRecord commit) throws IOException {
+        _store.appendCommit(commit);
+        _store.writeRef(_keyToCurrBranch, commit.getSha1());
         _stagedFiles.clear();
 
         _head = commit;
-        _commits.put(commit.getSha1(), commit);
     }
     /** Helper method for checker.
      * @param  args args
      **/
-    public void checkoutHelper(String[] args) {
-        if (!_branches.containsKey(args[1])) {
-            System.out.println("No such branch exists.");
+    public void checkoutHelper(String[] args) throws IOException {
+        lockForUpdate(true, false, false);
+        if (_store.readRef(args[1]) == null) {
+            _out.println("No such branch exists.");
             return;
         }
         if (_keyToCurrBranch.equals(args[1])) {
-            System.out.println("No need to checkout the current branch.");
+            _out.println("No need to checkout the current branch.");
             return;
         }
-        List<String> temp = Utils.plainFilenamesIn(".");
-        ArrayList<String> allFiles = new ArrayList<>();
-        for (int i = 0; i < temp.size(); i++) {
-            if (temp.get(i).contains(".txt")) {
-                allFiles.add(temp.get(i));
-            }
-        }
-        Commit headCommit = _branches.get(args[1]).getLast();
-        for (String s : allFiles) {
-            if (!_stagedFiles.containsKey(s)
-                    && !_head.getFiles().containsKey(s)
-                    && (headCommit.getFiles().containsKey(s)
-                    && !Utils.readContentsAsString(
-                            new File(headCommit.getFiles().get(s)))
-                    .equals(Utils.readContentsAsString(
-                            new File(s))))) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                return;
-            }
-        }
-
-
-        for (String s : headCommit.getFiles().keySet()) {
-            File actualFile = new File(s);
-            Utils.writeContents(actualFile, Utils.readContentsAsString(
-                    new File(headCommit.getFiles().get(s))));
-        }
-        for (String s : _head.getFiles().keySet()) {
-            if (!headCommit.getFiles().containsKey(s)) {
-                File delete = new File(s);
-                delete.delete();
-            }
+        CommitRecord headCommit = tip(args[1]);
+        if (untrackedInTheWay(headCommit)) {
+            _out.println("There is an untracked file in the way; "
+                    + "delete it, or add and commit it first.");
+            return;
         }
+        switchTo(headCommit);
         if (args[1] != _keyToCurrBranch) {
-            for (String s : _stagedFiles.keySet()) {
-                File delete = new File(".gitlet/staging/" + s);
-                delete.delete();
-            }
             _stagedFiles.clear();
             _removeFiles.clear();
         }
@@ -307,510 +545,764 @@ public class Gitlet implements Serializable {
         if (args.length == 2) {
             checkoutHelper(args);
         } else if (args.length == 3) {
-            if (!_head.getFiles().containsKey(args[2])) {
-                System.out.println("File does not exist in that commit.");
+            args[2] = _tree.normalize(args[2]);
+            if (!files(_head).containsKey(args[2])) {
+                _out.println("File does not exist in that commit.");
                 return;
             }
-            File checkoutFile = new File(args[2]);
-            Utils.writeContents(checkoutFile, Utils.readContentsAsString(
-                    new File(_head.getFiles().get(args[2]))));
+            File checkoutFile = _tree.file(args[2]);
+            writeFile(args[2], checkoutFile, files(_head).get(args[2]));
         } else if (args.length == 4) {
             if (!args[2].equals("--")) {
-                System.out.println("Incorrect operands");
+                _out.println("Incorrect operands");
                 return;
             }
-            String arg = args[1];
-            boolean checker2 = false;
-            File checkoutFile = Utils.join(CWD, args[3]);
-            if (args[1].length() == 8) {
-                for (Commit c : _commits.values()) {
-                    if (c.getSha1().substring(0, 8).equals(args[1])) {
-                        arg = c.getSha1();
-                        break;
-                    }
-                }
-            }
-            Commit pointer = _head;
-            while (pointer != null) {
-                if (pointer.getSha1().equals(arg)) {
-                    checker2 = true;
-                    break;
-                } else {
-                    pointer = pointer.getParent();
-                }
+            args[3] = _tree.normalize(args[3]);
+            File checkoutFile = _tree.file(args[3]);
+            String arg = commitId(args[1]);
+            if (arg == null) {
+                return;
             }
-            if (!checker2) {
-                System.out.println("No commit with that id exists.");
+            if (!_store.graph().isAncestor(arg, _head.getSha1())) {
+                _out.println("No commit with that id exists.");
                 return;
             }
-            if (!pointer.getFiles().containsKey(args[3])) {
-                System.out.println("File does not exist in that commit.");
+            CommitRecord pointer = _store.readCommit(arg);
+            if (!files(pointer).containsKey(args[3])) {
+                _out.println("File does not exist in that commit.");
                 return;
             }
-            String id = pointer.getFiles().get(args[3]);
-            byte[] b = Utils.readContents(new File(id));
-            Utils.writeContents(Utils.join(CWD, args[3]), b);
+            writeFile(args[3], checkoutFile, files(pointer).get(args[3]));
         }
     }
-    /** Prints the files and details of commits .
+    /** Prints the commits from the head back along first parents,
+     *  newest first. Takes -n N, --since D and --until D, with D as
+     *  for global-log.
      * @param  args args
      **/
     public void log(String[] args) throws IOException {
-        Commit pointer = _head;
-        while (pointer != null) {
-            String time = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z")
-                    .format(pointer.getDate());
-            if (pointer.isMerge() && pointer.getMergeParents().size() == 2) {
-                String temp = "===" + "\n" + "commit "
-                        + pointer.getSha1() + "\n" + "Merge: "
-                        + pointer.getMergeParents()
-                        .getFirst().getSha1().substring(0, 7)
-                        + " " + pointer.getMergeParents().getLast()
-                        .getSha1().substring(0, 7)
-                        + "\n" + "Date: " + time + "\n"
-                        + pointer.getMsg() + "\n";
-                System.out.println(temp);
-                pointer = pointer.getMergeParents().getFirst();
-            } else {
-                String test = "===" + "\n" + "commit " + pointer.getSha1()
-                        + "\n" + "Date: " + time + "\n" + pointer.getMsg()
-                        + "\n";
-                System.out.println(test);
-                pointer = pointer.getParent();
+        ArrayList<String> rest = new ArrayList<>();
+        try (LogWriter out = logWriter(true, args, rest)) {
+            if (out == null) {
+                return;
+            }
+            if (!rest.isEmpty()) {
+                _out.println("Incorrect operands.");
+                return;
+            }
+            CommitView pointer = _store.commitView();
+            boolean more = pointer.moveTo(_head.getSha1());
+            while (more && out.write(pointer)) {
+                more = pointer.moveToParent(0);
+            }
+        }
+    }
+    /** Returns a log writer set up by the -n, --since and --until
+     *  options in ARGS, adding the other arguments after the command to
+     *  REST, or null after saying why the options are bad. Merge
+     *  commits name their parents if MERGES.
+     * @param merges merges
+     * @param args args
+     * @param rest rest
+     * @return LogWriter
+     **/
+    private LogWriter logWriter(boolean merges, String[] args,
+                                ArrayList<String> rest) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        for (int i = 1; i < args.length; i++) {
+            boolean option = args[i].equals("-n")
+                    || args[i].equals("--since") || args[i].equals("--until");
+            if (!option) {
+                rest.add(args[i]);
+                continue;
+            }
+            if (i + 1 == args.length) {
+                _out.println("Incorrect operands.");
+                return null;
+            }
+            String value = args[++i];
+            try {
+                if (args[i - 1].equals("-n")) {
+                    limit = Integer.parseInt(value);
+                } else if (args[i - 1].equals("--since")) {
+                    since = Math.max(since, parseDate(value, false));
+                } else {
+                    until = Math.min(until, parseDate(value, true));
+                }
+            } catch (NumberFormatException excp) {
+                _out.println("Invalid count " + value + ".");
+                return null;
+            } catch (DateTimeParseException excp) {
+                _out.println("Invalid date " + value + ".");
+                return null;
             }
         }
+        return new LogWriter(_out, merges, limit, since, until);
     }
-    /** Removes certain files.
+    /** Unstages files and stages the removal of tracked ones, deleting
+     *  them from the working directory. Takes any number of paths, each
+     *  a file, a directory or a glob, matched against the staged and
+     *  tracked files.
      * @param  args args
      **/
     public void rm(String[] args) throws IOException {
-        File removeFile = new File(args[1]);
-        if (!_stagedFiles.containsKey(args[1])
-                && !_head.getFiles().containsKey(args[1])) {
-            System.out.println("No reason to remove the file.");
-        }
-        if (_stagedFiles.containsKey(args[1])) {
-            _stagedFiles.remove(args[1]);
-            File f = new File(".gitlet/staging/" + args[1]);
-            f.delete();
+        lockForUpdate(false, false, false);
+        LinkedHashSet<String> paths = new LinkedHashSet<>();
+        TreeSet<String> known = null;
+        for (int i = 1; i < args.length; i++) {
+            String path = _tree.normalize(args[i]);
+            if (!PathSpec.isGlob(args[i]) && (_stagedFiles.containsKey(path)
+                    || files(_head).containsKey(path))) {
+                paths.add(path);
+                continue;
+            }
+            if (known == null) {
+                known = new TreeSet<>(files(_head).keySet());
+                known.addAll(_stagedFiles.keySet());
+            }
+            List<String> matched = expand(args[i], known);
+            if (matched.isEmpty()) {
+                _out.println("No reason to remove the file.");
+            }
+            paths.addAll(matched);
         }
-        if (_head.getFiles().containsKey(args[1])) {
-            _removeFiles.add(args[1]);
-            if (removeFile.exists()) {
-                removeFile.delete();
+        remove(paths);
+    }
+    /** Unstages each of PATHS, and stages the removal of those the head
+     *  commit tracks, deleting their working files.
+     * @param paths paths
+     **/
+    private void remove(Collection<String> paths) throws IOException {
+        Map<String, String> head = files(_head);
+        for (String s : paths) {
+            _stagedFiles.remove(s);
+            if (head.containsKey(s)) {
+                _removeFiles.add(s);
+                _tree.delete(s);
             }
         }
     }
-    /** Finds a commit.
+    /** Finds the commits with a message, through the message index.
+     *  Any filters global-log takes may follow the message.
      * @param  args args
      **/
-    public void find(String[] args) {
+    public void find(String[] args) throws IOException {
         ArrayList<String> commitList = new ArrayList<>();
-        boolean checker3 = true;
-        for (Commit c : _commits.values()) {
-            String msg = c.getMsg();
-            if (msg.equals(args[1])) {
-                commitList.add(c.getSha1());
+        BitSet hits = select(args, 2);
+        if (hits == null) {
+            return;
+        }
+        for (String word : MessageIndex.words(args[1])) {
+            hits.and(_store.search().word(word));
+        }
+        CommitGraph graph = _store.graph();
+        CommitView c = _store.commitView();
+        byte[] msg = args[1].getBytes(StandardCharsets.UTF_8);
+        for (int p = hits.nextSetBit(0); p >= 0; p = hits.nextSetBit(p + 1)) {
+            if (c.moveTo(graph.ids(), p) && c.msgEquals(msg)) {
+                commitList.add(c.id());
             }
         }
         if (commitList.size() == 0) {
-            System.out.println("Found no commit with that message");
+            _out.println("Found no commit with that message");
             return;
         }
         for (int i = 0; i < commitList.size(); i++) {
-            System.out.println(commitList.get(i));
+            _out.println(commitList.get(i));
         }
     }
     /** Creates a new branch and pointer.
      * @param  args args
      **/
-    public void branch(String[] args) {
-        if (_branches.containsKey(args[1])) {
-            System.out.println("A branch with that name already exists.");
+    public void branch(String[] args) throws IOException {
+        _store.lockRef(args[1]);
+        if (_store.readRef(args[1]) != null) {
+            _out.println("A branch with that name already exists.");
             return;
         }
-        LinkedList<Commit> commit = new LinkedList<>();
-        Commit pointer = _head;
-        commit.add(pointer);
-        while (pointer != null) {
-            pointer = pointer.getParent();
-            commit.addFirst(pointer);
-        }
-        _branches.put(args[1], commit);
+        _store.writeRef(args[1], _head.getSha1());
     }
     /** Prints the status of the repo.
      * @param  args args
      **/
-    public void status(String[] args) {
-        if (_commits == null) {
-            System.out.println("Not in an initialized Gitlet directory.");
+    public void status(String[] args) throws IOException {
+        if (_store == null) {
+            _out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
-        ArrayList<String> sorted = new ArrayList<>(_branches.keySet());
-        Collections.sort(sorted);
-        System.out.println("=== Branches ===");
-        for (String s : sorted) {
+        _out.println("=== Branches ===");
+        for (String s : _store.readRefs().keySet()) {
             if (s.equals(_keyToCurrBranch)) {
-                System.out.println("*" + s);
+                _out.println("*" + s);
             } else {
-                System.out.println(s);
+                _out.println(s);
             }
         }
-        System.out.println("\n" + "=== Staged Files ===");
-        for (String s : _stagedFiles.keySet()) {
-            System.out.println(s);
+        _out.println("\n" + "=== Staged Files ===");
+        for (String s : new TreeSet<>(_stagedFiles.keySet())) {
+            _out.println(s);
         }
-        System.out.println("\n" + "=== Removed Files ===");
-        for (String s : _removeFiles) {
-            System.out.println(s);
+        _out.println("\n" + "=== Removed Files ===");
+        for (String s : new TreeSet<>(_removeFiles)) {
+            _out.println(s);
         }
-        System.out.println("\n"
+        _out.println("\n"
                 + "=== Modifications Not Staged For Commit ===");
         if (!_head.isMerge()) {
-            HashMap<String, String> files = allModified();
+            TreeMap<String, String> files = allModified();
             for (String name : files.keySet()) {
-                System.out.println(name + "(" + files.get(name) + ")");
-            }
-        }
-        System.out.println("\n" + "=== Untracked Files ===");
-        ArrayList<String> allFiles = new ArrayList<>();
-        List<String> temp = Utils.plainFilenamesIn(".");
-        for (int i = 0; i < temp.size(); i++) {
-            if (temp.get(i).contains(".txt")) {
-                allFiles.add(temp.get(i));
+                _out.println(name + "(" + files.get(name) + ")");
             }
         }
-        Commit commitHead2 = _head;
+        _out.println("\n" + "=== Untracked Files ===");
+        List<String> allFiles = _tree.files();
+        CommitRecord commitHead2 = _head;
         List<String> files2 = new ArrayList<>();
-        HashMap<String, String> blob2 = commitHead2.getFiles();
+        Map<String, String> blob2 = files(commitHead2);
         for (String s : allFiles) {
             if (!blob2.containsKey(s) && !_stagedFiles.containsKey(s)) {
                 files2.add(s);
             }
         }
         for (String s : files2) {
-            System.out.println(s);
+            _out.println(s);
         }
-        System.out.println();
+        _out.println();
     }
-    /** Returns a file.
-     * @return Hashmap
+    /** Returns the tracked files changed in the working directory but
+     *  not staged, sorted, each mapped to how it changed.
+     * @return TreeMap
      **/
-    public HashMap<String, String> allModified() {
-        ArrayList<String> allFiles = new ArrayList<>();
-        List<String> temp = Utils.plainFilenamesIn(".");
-        for (int i = 0; i < temp.size(); i++) {
-            if (temp.get(i).contains(".txt")) {
-                allFiles.add(temp.get(i));
+    public TreeMap<String, String> allModified() throws IOException {
+        HashSet<String> allFiles = new HashSet<>(_tree.files());
+        TreeMap<String, String> files = new TreeMap<>();
+        Map<String, String> blob = files(_head);
+        ArrayList<String> candidates = new ArrayList<>();
+        for (String s : allFiles) {
+            if (blob.containsKey(s) && !_stagedFiles.containsKey(s)) {
+                candidates.add(s);
             }
         }
-        Commit commitHead = _head;
-        HashMap<String, String> files = new HashMap<>();
-        HashMap<String, String> blob = commitHead.getFiles();
-        for (String s : allFiles) {
-            if (blob.containsKey(s)
-                    && !Utils.readContentsAsString(
-                            new File(commitHead.getFiles().get(s)))
-                    .equals(Utils.readContentsAsString(
-                            new File(s)))
-                    && !_stagedFiles.containsKey(s)) {
+        TreeMap<String, String> ids = _tree.hash(candidates);
+        for (String s : candidates) {
+            if (!blob.get(s).equals(ids.get(s))) {
                 files.put(s, "modified");
             }
         }
         for (String s : blob.keySet()) {
-            if (!allFiles.contains(s)
-                    && !_stagedFiles.containsKey(s)) {
+            if (!allFiles.contains(s) && !_stagedFiles.containsKey(s)
+                    && !_removeFiles.contains(s) && materialized(s)) {
                 files.put(s, "deleted");
             }
         }
         return files;
     }
+    /** Prints unified diffs: with no operands, of the staging area
+     *  against the tracked working files; with --staged, of the head
+     *  commit against the staging area; with two commit ids, of the
+     *  first commit against the second. Files with the same blob id on
+     *  both sides are skipped without being read, and the rest are
+     *  diffed in parallel, then printed in path order.
+     * @param args args
+     **/
+    public void diff(String[] args) throws IOException {
+        Map<String, String> old;
+        Map<String, String> now;
+        boolean working = false;
+        if (args.length == 1) {
+            old = staged();
+            now = _tree.hash(new ArrayList<>(old.keySet()));
+            working = true;
+        } else if (args.length == 2 && args[1].equals("--staged")) {
+            old = files(_head);
+            now = staged();
+        } else if (args.length == 3) {
+            String first = commitId(args[1]);
+            String second = first == null ? null : commitId(args[2]);
+            if (second == null) {
+                return;
+            }
+            old = files(_store.readCommit(first));
+            now = files(_store.readCommit(second));
+        } else {
+            _out.println("Incorrect operands.");
+            return;
+        }
+        TreeSet<String> paths = new TreeSet<>(old.keySet());
+        paths.addAll(now.keySet());
+        ArrayList<Callable<byte[]>> diffs = new ArrayList<>();
+        for (String s : paths) {
+            String o = old.get(s);
+            String n = now.get(s);
+            if (Objects.equals(o, n)
+                    || (working && n == null && !materialized(s))) {
+                continue;
+            }
+            FileDiff.Source a = blob(o);
+            FileDiff.Source b = n != null && working
+                    ? () -> new FileInputStream(_tree.file(s)) : blob(n);
+            diffs.add(() -> {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                FileDiff.write(s, a, b, out);
+                return out.toByteArray();
+            });
+        }
+        for (byte[] d : WorkTree.parallel(diffs)) {
+            _out.write(d, 0, d.length);
+        }
+        _out.flush();
+    }
+    /** Sets the paths a sparse checkout materializes to those the
+     *  operands name, each a path, a directory or a glob, or with --all
+     *  to every path, then writes and deletes working files to match.
+     *  A file left out that has changes is kept. With no operands,
+     *  prints the patterns.
+     * @param args args
+     **/
+    public void sparse(String[] args) throws IOException {
+        if (args.length == 1) {
+            for (String p : _store.readSparse()) {
+                _out.println(p);
+            }
+            return;
+        }
+        lockForUpdate(false, false, false);
+        ArrayList<String> patterns = new ArrayList<>();
+        if (!(args.length == 2 && args[1].equals("--all"))) {
+            for (int i = 1; i < args.length; i++) {
+                patterns.add(_tree.normalize(args[i]));
+            }
+        }
+        _store.writeSparse(patterns);
+        _sparse = null;
+        Map<String, String> index = staged();
+        ArrayList<String> dropped = new ArrayList<>();
+        for (Map.Entry<String, String> e : index.entrySet()) {
+            File file = _tree.file(e.getKey());
+            if (materialized(e.getKey())) {
+                if (!file.exists()) {
+                    writeFile(e.getKey(), file, e.getValue());
+                }
+            } else if (file.isFile()) {
+                dropped.add(e.getKey());
+            }
+        }
+        TreeMap<String, String> ids = _tree.hash(dropped);
+        for (String s : dropped) {
+            if (index.get(s).equals(ids.get(s))) {
+                _tree.delete(s);
+            } else {
+                _out.println("Keeping changed file " + s + ".");
+            }
+        }
+    }
+    /** Returns the files the next commit would hold: those of the head
+     *  commit with the staging area applied.
+     * @return Map
+     **/
+    private Map<String, String> staged() throws IOException {
+        HashMap<String, String> changes = new HashMap<>(_stagedFiles);
+        for (String s : _removeFiles) {
+            changes.put(s, null);
+        }
+        return files(_head).apply(changes);
+    }
+    /** Returns a source for blob ID, or null if ID is null.
+     * @param id id
+     * @return FileDiff.Source
+     **/
+    private FileDiff.Source blob(String id) {
+        if (id == null) {
+            return null;
+        }
+        return () -> _blobs.open(id);
+    }
     /** Removes a branch.
      * @param  args args
      **/
-    public void rmBranch(String[] args) {
-        if (!_branches.containsKey(args[1])) {
-            System.out.println("A branch with that name does not exist.");
+    public void rmBranch(String[] args) throws IOException {
+        _store.lockHead();
+        _keyToCurrBranch = _store.readHead();
+        _savedBranch = _keyToCurrBranch;
+        _store.lockRef(args[1]);
+        if (_store.readRef(args[1]) == null) {
+            _out.println("A branch with that name does not exist.");
             return;
         }
         if (args[1].equals(_keyToCurrBranch)) {
-            System.out.println("Cannot remove the current branch.");
+            _out.println("Cannot remove the current branch.");
             return;
         }
-        _branches.remove(args[1]);
+        _store.deleteRef(args[1]);
     }
     /** Resets a commit with a given id.
      * @param  args argse
      **/
-    public void reset(String[] args) {
-        if (!_commits.containsKey(args[1])) {
-            System.out.println("No commit with that id exists.");
+    public void reset(String[] args) throws IOException {
+        lockForUpdate(false, true, false);
+        String id = commitId(args[1]);
+        if (id == null) {
             return;
         }
-        Commit headCommit = _commits.get(args[1]);
-        List<String> temp = Utils.plainFilenamesIn(".");
-        ArrayList<String> allFiles = new ArrayList<>();
-        for (int i = 0; i < temp.size(); i++) {
-            if (temp.get(i).contains(".txt")) {
-                allFiles.add(temp.get(i));
-            }
-        }
-        for (String s : allFiles) {
-            if (!_stagedFiles.containsKey(s)
-                    && !_head.getFiles().containsKey(s)
-                    && (headCommit.getFiles().containsKey(s)
-                    && !Utils.readContentsAsString(
-                            new File(headCommit.getFiles().get(s)))
-                    .equals(Utils.readContentsAsString(new File(s))))) {
-                System.out.println("There is an untracked file "
-                        + "in the way; delete it, or add and commit it first.");
-                return;
-            }
+        CommitRecord headCommit = _store.readCommit(id);
+        if (untrackedInTheWay(headCommit)) {
+            _out.println("There is an untracked file "
+                    + "in the way; delete it, or add and commit it first.");
+            return;
         }
         _stagedFiles.clear();
         _removeFiles.clear();
-        for (String s : headCommit.getFiles().keySet()) {
-            if (!headCommit.getFiles().containsKey(s)) {
-                File delete = new File(s);
-                delete.delete();
-            } else {
-                File actualFile = new File(s);
-                Utils.writeContents(actualFile, Utils.readContentsAsString(
-                        new File(headCommit.getFiles().get(s))));
+        switchTo(headCommit);
+        _head = headCommit;
+        _store.writeRef(_keyToCurrBranch, headCommit.getSha1());
+    }
+    /** A log of all commits in the order they were made, or with
+     *  filters, of those that pass them. Takes -n N as well.
+     * @param  args args
+     **/
+    public void globalLog(String[] args) throws IOException {
+        ArrayList<String> rest = new ArrayList<>();
+        try (LogWriter out = logWriter(false, args, rest)) {
+            if (out == null) {
+                return;
+            }
+            if (rest.isEmpty()) {
+                _store.forEachCommit(out::write);
+                return;
+            }
+            rest.add(0, args[0]);
+            BitSet hits = select(rest.toArray(new String[0]), 1);
+            if (hits == null) {
+                return;
+            }
+            CommitGraph graph = _store.graph();
+            CommitView c = _store.commitView();
+            int p = hits.nextSetBit(0);
+            while (p >= 0 && c.moveTo(graph.ids(), p) && out.write(c)) {
+                p = hits.nextSetBit(p + 1);
             }
         }
-        _head = headCommit;
-        LinkedList<Commit> savedList = new LinkedList<Commit>();
-        for (String s : _branches.keySet()) {
-            for (Commit traverse : _branches.get(s)) {
-                if (traverse != null && traverse.getSha1().equals(args[1])) {
-                    savedList.add(traverse);
-                    _branches.replace(_keyToCurrBranch, savedList);
-                    return;
+    }
+    /** Returns the positions in the commit graph of the commits that
+     *  pass the filters in ARGS from START on, found through the
+     *  message index, or null after saying why the filters are bad.
+     *  The filters are --word W, --prefix P and --grep TEXT, which
+     *  match a word of the message, the start of one, or any part of
+     *  the message, ignoring case; --author A; and --since D and
+     *  --until D, where D is yyyy-MM-dd or yyyy-MM-ddTHH:mm:ss.
+     * @param args args
+     * @param start start
+     * @return BitSet
+     **/
+    private BitSet select(String[] args, int start) throws IOException {
+        MessageIndex search = _store.search();
+        CommitGraph graph = _store.graph();
+        BitSet hits = new BitSet();
+        hits.set(0, graph.size());
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        String grep = null;
+        for (int i = start; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                _out.println("Incorrect operands.");
+                return null;
+            }
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                case "--word":
+                    hits.and(search.word(value));
+                    break;
+                case "--prefix":
+                    hits.and(search.prefix(value));
+                    break;
+                case "--author":
+                    hits.and(search.author(value));
+                    break;
+                case "--grep":
+                    grep = value.toLowerCase();
+                    for (String word : MessageIndex.words(value)) {
+                        hits.and(search.containing(word));
+                    }
+                    break;
+                case "--since":
+                    since = Math.max(since, parseDate(value, false));
+                    break;
+                case "--until":
+                    until = Math.min(until, parseDate(value, true));
+                    break;
+                default:
+                    _out.println("Incorrect operands.");
+                    return null;
                 }
-                savedList.add(traverse);
+            } catch (DateTimeParseException excp) {
+                _out.println("Invalid date " + value + ".");
+                return null;
             }
-            savedList.clear();
         }
+        CommitView c = _store.commitView();
+        for (int p = hits.nextSetBit(0); p >= 0; p = hits.nextSetBit(p + 1)) {
+            long time = graph.time(p);
+            if (time < since || time > until || (grep != null
+                    && c.moveTo(graph.ids(), p)
+                    && !c.msg().toLowerCase().contains(grep))) {
+                hits.clear(p);
+            }
+        }
+        return hits;
     }
-    /** A log of all commits.
-     * @param  args args
+    /** Returns the time in milliseconds that DATE, yyyy-MM-dd or
+     *  yyyy-MM-ddTHH:mm:ss in local time, stands for. A bare day means
+     *  its first millisecond, or its last if END.
+     * @param date date
+     * @param end end
+     * @return long
      **/
-    public void globalLog(String[] args) {
-        for (Commit pointer : _commits.values()) {
-            String time = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z")
-                    .format(pointer.getDate());
-            System.out.println("===" + "\n" + "commit " + pointer.getSha1()
-                    + "\n" + "Date: " + time + "\n" + pointer.getMsg() + "\n");
+    private static long parseDate(String date, boolean end) {
+        ZonedDateTime time;
+        if (date.length() == "yyyy-MM-dd".length()) {
+            LocalDate day = LocalDate.parse(date);
+            time = (end ? day.plusDays(1) : day)
+                    .atStartOfDay(ZoneId.systemDefault());
+            if (end) {
+                return time.toInstant().toEpochMilli() - 1;
+            }
+        } else {
+            time = LocalDateTime.parse(date).atZone(ZoneId.systemDefault());
         }
+        return time.toInstant().toEpochMilli();
+    }
+    /** Returns the latest common ancestor of CURRENT and GIVEN.
+     * @param current current
+     * @param given given
+     * @return CommitRecord
+     **/
+    private CommitRecord splitPoint(CommitRecord current, CommitRecord given)
+            throws IOException {
+        return _store.readCommit(_store.graph().mergeBase(current.getSha1(),
+                given.getSha1()));
+    }
+    /** Packs every blob into one pack file, storing successive
+     *  versions of each path as deltas, then packs the refs and
+     *  sorts the message index.
+     * @param  args args
+     **/
+    public void gc(String[] args) throws IOException {
+        LinkedHashMap<String, LinkedHashSet<String>> histories =
+                new LinkedHashMap<>();
+        HashSet<String> seen = new HashSet<>();
+        for (String id : _store.commitIds()) {
+            Tree.walk(_store, _store.readCommit(id).getTree(), "",
+                (path, blob) -> histories.computeIfAbsent(path,
+                        k -> new LinkedHashSet<>()).add(blob), seen);
+        }
+        _blobs.repack(histories);
+        _store.packRefs();
+        _store.lockGraph();
+        _store.search().compact();
     }
-    /** Merging two branches.
+    /** Merges a branch, or a commit named by its id, into the current one.
      * @param  args args
      **/
     public void merge(String[] args) throws IOException {
-        if (!_branches.containsKey(args[1])) {
-            System.out.println("A branch with that name does not exist.");
+        lockForUpdate(false, true, true);
+        if (tip(args[1]) == null) {
+            if (_store.resolveCommit(args[1]).size() > 1) {
+                _out.println("Commit id " + args[1] + " is ambiguous.");
+            } else {
+                _out.println("A branch with that name does not "
+                        + "exist.");
+            }
             return;
         }
         if (!_stagedFiles.isEmpty() || !_removeFiles.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
+            _out.println("You have uncommitted changes.");
             return;
         }
         if (args[1].equals(_keyToCurrBranch)) {
-            System.out.println("Cannot merge a branch with itself.");
+            _out.println("Cannot merge a branch with itself.");
             return;
         }
         if (untrackedFiles(args)) {
             return;
         }
-        LinkedList<Commit> splitPointLinkedList = new LinkedList<Commit>();
-        LinkedList<Commit> currentLinkedList = _branches.get(_keyToCurrBranch);
-        LinkedList<Commit> givenLinkedList = _branches.get(args[1]);
-
-        for (Commit c : currentLinkedList) {
-            if (c == null || givenLinkedList.contains(c)) {
-                splitPointLinkedList.addLast(c);
-            } else {
-                break;
-            }
-        }
-        Commit splitPoint = splitPointLinkedList.getLast();
-        Commit current = currentLinkedList.getLast();
-        Commit given = givenLinkedList.getLast();
-        if (args[1].equals("master")) {
-            checkout(new String[]{"checkout", args[1]});
-            System.out.println("Current branch fast-forwarded.");
-            return;
-        } else if (_branches.get(args[1]).getLast().getSha1()
-                .equals(_branches.get(_keyToCurrBranch).getLast().getSha1())) {
-            checkout(new String[]{"checkout", args[1]});
-            System.out.println("Current branch fast-forwarded.");
-            return;
-        } else if (splitPoint.getSha1().equals(given.getSha1())) {
-            System.out.println("Given branch is an ancestor"
+        CommitRecord current = _head;
+        CommitRecord given = tip(args[1]);
+        CommitRecord splitPoint = splitPoint(current, given);
+        if (splitPoint.getSha1().equals(given.getSha1())) {
+            _out.println("Given branch is an ancestor"
                     + " of the current branch.");
             return;
-        }
-        mergeHelper(current, splitPoint, given);
-        mergeHelper2(current, splitPoint, given);
-        if (!checker) {
-            createMergeCommit(args);
-        } else {
-            System.out.println("Encountered a merge conflict.");
-            checker = false;
+        } else if (splitPoint.getSha1().equals(current.getSha1())) {
+            switchTo(given);
             _head = given;
-            createMergeCommit(args);
-
+            _store.writeRef(_keyToCurrBranch, given.getSha1());
+            _out.println("Current branch fast-forwarded.");
+            return;
         }
+        boolean conflict = mergeFiles(current, splitPoint, given);
+        if (conflict) {
+            _out.println("Encountered a merge conflict.");
+        }
+        createMergeCommit(args);
     }
-    /** mergeConflict print.
-     * @param current current
-     * @param given given
-     * @return String string
-     **/
-    public String mergeConflict(String current, String given) {
-        String file = "<<<<<<< HEAD"
-                + "\n"
-                + current
-                + "======="
-                + "\n"
-                + given
-                + ">>>>>>>"
-                + "\n";
-        return file;
-    }
-    /** Creates a merge commit.
+    /** Creates a merge commit of the current branch and the given one
+     *  from the staging area.
      * @param args args
      **/
     public void createMergeCommit(String[] args) throws IOException {
-        HashMap<String, String> tempFile = new HashMap<>();
-        tempFile.putAll(_branches.get(_keyToCurrBranch)
-                .getLast().getFiles());
-        for (String s : _branches.get(args[1])
-                .getLast().getFiles().keySet()) {
-            tempFile.put(s, _branches.get(args[1])
-                    .getLast().getFiles().get(s));
-        }
-        LinkedList<Commit> mergeParents = new LinkedList<>();
-        mergeParents.addFirst(_branches.get(_keyToCurrBranch).getLast());
-        mergeParents.addLast(_branches.get(args[1]).getLast());
-        Commit com = new Commit(new Date(), "Merged " + args[1]
-                + " into " + _keyToCurrBranch
-                + ".", tempFile, mergeParents, true);
-        commitMerge(com);
+        CommitRecord current = _head;
+        CommitRecord given = tip(args[1]);
+        HashMap<String, String> changes = new HashMap<>();
+        writeStagedBlobs(changes);
+        String tree = applyChanges(current, changes);
+        CommitRecord com = new CommitRecord(System.currentTimeMillis(),
+                author(), "Merged " + args[1] + " into "
+                + _keyToCurrBranch + ".", tree, current.getSha1(),
+                given.getSha1());
+        finishCommit(com);
     }
     /** Finds untracked files and prints warning.
      * @param args args
      * @return boolean
      **/
-    public boolean untrackedFiles(String[] args) {
-        List<String> temp = Utils.plainFilenamesIn(".");
-        ArrayList<String> allFiles = new ArrayList<>();
-        for (int i = 0; i < temp.size(); i++) {
-            if (temp.get(i).contains(".txt")) {
-                allFiles.add(temp.get(i));
-            }
+    public boolean untrackedFiles(String[] args) throws IOException {
+        if (untrackedInTheWay(tip(args[1]))) {
+            _out.println("There is an untracked file in the way; "
+                    + "delete it, or add and commit it first.");
+            return true;
         }
-        Commit headCommit = _branches.get(args[1]).getLast();
-        for (String s : allFiles) {
-            if (!_stagedFiles.containsKey(s)
-                    && !_head.getFiles().containsKey(s)
-                    && (headCommit.getFiles().containsKey(s)
-                    && !Utils.readContentsAsString(
-                            new File(headCommit.getFiles().get(s)))
-                    .equals(Utils.readContentsAsString(new File(s))))) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
+        return false;
+    }
+    /** Returns true if checking out TARGET would overwrite a working
+     *  file that is neither staged nor tracked by the head commit. Only
+     *  the paths TARGET adds are looked at.
+     * @param target target
+     * @return boolean
+     **/
+    private boolean untrackedInTheWay(CommitRecord target)
+            throws IOException {
+        ArrayList<String> candidates = new ArrayList<>();
+        Map<String, String> wanted = new HashMap<>();
+        Tree.diff(_store, _head.getTree(), target.getTree(), "",
+            (path, old, now) -> {
+                if (old == null && now != null && materialized(path)
+                        && !_stagedFiles.containsKey(path)
+                        && _tree.exists(path)) {
+                    candidates.add(path);
+                    wanted.put(path, now);
+                }
+            });
+        TreeMap<String, String> ids = _tree.hash(candidates);
+        for (String s : candidates) {
+            if (!wanted.get(s).equals(ids.get(s))) {
                 return true;
             }
         }
         return false;
     }
-    /** Abstracts away some work of merge.
-     * @param current current
-     * @param splitPoint splitpoint
-     * @param given given
+    /** Makes the working files those of TARGET rather than of the head
+     *  commit. Only the paths whose blob ids differ between the two are
+     *  written or deleted, and of those, only the paths in the sparse
+     *  checkout are written.
+     * @param target target
      **/
-    public void mergeHelper(Commit current, Commit splitPoint,
-                            Commit given) throws IOException {
-        for (String s : current.getFiles().keySet()) {
-            if (splitPoint.getFiles().containsKey(s)
-                    && given.getFiles().containsKey(s)) {
-                if (!given.getFiles().get(s).equals(current.getFiles().get(s))
-                        || !splitPoint.getFiles().get(s)
-                        .equals(current.getFiles().get(s))
-                        || !splitPoint.getFiles().get(s)
-                        .equals(given.getFiles().get(s))) {
-                    String change = mergeConflict(Utils.readContentsAsString(
-                                    new File(".gitlet/blobs/"
-                                            + Utils.sha1(
-                                                    Utils.readContentsAsString(
-                                            new File(
-                                                    current.getFiles()
-                                                            .get(s)))))) + "\n",
-                            Utils.readContentsAsString(
-                                    new File(".gitlet/blobs/"
-                                            + Utils.sha1(
-                                            Utils.readContentsAsString(
-                                                    new File(given.getFiles()
-                                                            .get(s))))))
-                                    + "\n");
-                    Utils.writeContents(new File(s), change);
-                    checker = true;
-                }
-                if (!splitPoint.getFiles().get(s)
-                        .equals(given.getFiles().get(s))
-                        && splitPoint.getFiles().get(s)
-                        .equals(current.getFiles()
-                                .get(s))) {
-                    checkout(new String[]{"checkout",
-                            given.getSha1(), "--", s});
-                    add(new String[]{"add", s});
+    private void switchTo(CommitRecord target) throws IOException {
+        Tree.diff(_store, _head.getTree(), target.getTree(), "",
+            (path, old, now) -> {
+                if (now != null && materialized(path)) {
+                    writeFile(path, _tree.file(path), now);
+                } else if (old != null) {
+                    _tree.delete(path);
                 }
-            } else if (!given.getFiles().containsKey(s)
-                    && splitPoint.getFiles().containsKey(s)
-                    && !splitPoint.getFiles().get(s)
-                    .equals(current.getFiles().get(s))) {
-                String change = mergeConflict(Utils.readContentsAsString(
-                        new File(".gitlet/blobs/"
-                                + Utils.sha1(Utils.readContentsAsString(
-                                new File(current.getFiles().get(s))))))
-                        + "\n", "");
-                Utils.writeContents(new File(s), change);
-                checker = true;
-            }
-        }
-        for (String f : splitPoint.getFiles().keySet()) {
-            if (current.getFiles().containsKey(f)) {
-                if (splitPoint.getFiles().get(f)
-                        .equals(current.getFiles().get(f))
-                        && !given.getFiles().containsKey(f)) {
-                    rm(new String[]{"remove", f});
-                }
-            }
+            });
+    }
+    /** Returns true if PATH is in the sparse checkout, as every path is
+     *  when there is none.
+     * @param path path
+     * @return boolean
+     **/
+    private boolean materialized(String path) {
+        if (_sparse == null) {
+            List<String> patterns = _store.readSparse();
+            _sparse = new PathSpec(patterns.isEmpty() ? List.of("")
+                    : patterns);
         }
+        return _sparse.matches(path);
     }
-    /** Abstracts away some work of merge.
+    /** Merges the changes GIVEN made since SPLITPOINT into the working
+     *  files and the staging area, on top of CURRENT, and returns true if
+     *  any file conflicted. Each path is decided by blob ids alone; only
+     *  a file changed differently on both sides is read, and merged line
+     *  by line, with conflict markers around just the lines that clash.
+     *  The three versions are streamed, never held whole. A path outside
+     *  the sparse checkout is staged without being written to the tree,
+     *  unless it conflicted, when it is written so it can be resolved.
      * @param current current
      * @param splitPoint splitpoint
      * @param given given
+     * @return boolean
      **/
-    public void mergeHelper2(Commit current, Commit splitPoint,
-                             Commit given) throws IOException {
-        for (String s : given.getFiles().keySet()) {
-            if (!splitPoint.getFiles().containsKey(s)) {
-                _head = given;
-                checkout(new String[]{"checkout", given.getSha1(), "--", s});
-                add(new String[]{"add", s});
+    private boolean mergeFiles(CommitRecord current, CommitRecord splitPoint,
+                               CommitRecord given) throws IOException {
+        Map<String, String> base = files(splitPoint);
+        Map<String, String> ours = files(current);
+        Map<String, String> theirs = files(given);
+        TreeSet<String> paths = new TreeSet<>(base.keySet());
+        paths.addAll(ours.keySet());
+        paths.addAll(theirs.keySet());
+        boolean conflict = false;
+        ArrayList<String> added = new ArrayList<>();
+        ArrayList<String> removed = new ArrayList<>();
+        HashMap<String, String> hidden = new HashMap<>();
+        for (String s : paths) {
+            String o = base.get(s);
+            String a = ours.get(s);
+            String b = theirs.get(s);
+            if (Objects.equals(a, b) || Objects.equals(o, b)) {
+                continue;
             }
-        }
-        for (String c : current.getFiles().keySet()) {
-            if (!splitPoint.getFiles().containsKey(c)
-                    && !given.getFiles().containsKey(c)) {
-                if (c.equals("f.txt")) {
-                    new File(c).delete();
+            if (Objects.equals(o, a)) {
+                if (b == null) {
+                    removed.add(s);
+                } else if (materialized(s)) {
+                    writeFile(s, _tree.file(s), b);
+                    added.add(s);
+                } else {
+                    hidden.put(s, b);
                 }
+                continue;
+            }
+            File merged = File.createTempFile("tmp-", null, GITLET_FOLDER);
+            boolean clash;
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(merged), BlobStore.BUFFER_SIZE)) {
+                clash = FileDiff.merge(blob(o), blob(a), blob(b), out);
+            }
+            conflict |= clash;
+            if (clash || materialized(s)) {
+                File file = _tree.file(s);
+                file.getParentFile().mkdirs();
+                Files.move(merged.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                added.add(s);
+            } else {
+                hidden.put(s, _blobs.store(merged));
+                merged.delete();
+            }
+        }
+        remove(removed);
+        stage(added);
+        for (Map.Entry<String, String> e : hidden.entrySet()) {
+            _removeFiles.remove(e.getKey());
+            if (e.getValue().equals(ours.get(e.getKey()))) {
+                _stagedFiles.remove(e.getKey());
+            } else {
+                _stagedFiles.put(e.getKey(), e.getValue());
             }
         }
+        return conflict;
     }
 }
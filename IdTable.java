@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** A set of binary ids numbered in the order they were added, held in
+ *  two flat arrays: the ids back to back, and an open-addressing table
+ *  of their numbers. Ids are SHA-1 hashes, so their first bytes serve
+ *  as the hash. Finding an id that is already in binary, in a mapped
+ *  record for instance, makes no objects at all, so a table of any
+ *  size costs two arrays, not a String and a boxed value per id.
+ *  @author Adam
+ */
+final class IdTable {
+    /** Length in bytes of an id. **/
+    private static final int LENGTH = MetaStore.HASH_BYTES;
+
+    /** The ids, in the order they were added. **/
+    private byte[] _ids = new byte[16 * LENGTH];
+    /** One more than the number of the id hashed to each slot, or 0
+     *  for an empty slot; never more than half full. **/
+    private int[] _slots = new int[32];
+    /** Number of ids. **/
+    private int _size;
+
+    /** Returns the number of ids. **/
+    int size() {
+        return _size;
+    }
+    /** Returns id number INDEX in hex.
+     * @param index index
+     * @return String
+     **/
+    String id(int index) {
+        return MetaStore.toHex(Arrays.copyOfRange(_ids, index * LENGTH,
+                (index + 1) * LENGTH));
+    }
+    /** Returns the number of ID, given in hex, or -1 if it is not here.
+     * @param id id
+     * @return int
+     **/
+    int find(String id) {
+        if (id.length() != 2 * LENGTH) {
+            return -1;
+        }
+        return find(ByteBuffer.wrap(MetaStore.fromHex(id)), 0);
+    }
+    /** Returns the number of the id held in SRC at POS, or -1 if it is
+     *  not here.
+     * @param src src
+     * @param pos pos
+     * @return int
+     **/
+    int find(ByteBuffer src, int pos) {
+        int mask = _slots.length - 1;
+        for (int s = src.getInt(pos) & mask; _slots[s] != 0;
+             s = (s + 1) & mask) {
+            if (matches(_slots[s] - 1, src, pos)) {
+                return _slots[s] - 1;
+            }
+        }
+        return -1;
+    }
+    /** Returns the number of id INDEX of OTHER, or -1 if it is not
+     *  here.
+     * @param other other
+     * @param index index
+     * @return int
+     **/
+    int find(IdTable other, int index) {
+        return find(ByteBuffer.wrap(other._ids), index * LENGTH);
+    }
+    /** Adds ID, given in hex, and returns its number.
+     * @param id id
+     * @return int
+     **/
+    int add(String id) {
+        return add(ByteBuffer.wrap(MetaStore.fromHex(id)), 0);
+    }
+    /** Adds the id held in SRC at POS, unless it is already here, and
+     *  returns its number.
+     * @param src src
+     * @param pos pos
+     * @return int
+     **/
+    int add(ByteBuffer src, int pos) {
+        int found = find(src, pos);
+        if (found >= 0) {
+            return found;
+        }
+        if ((_size + 1) * LENGTH > _ids.length) {
+            _ids = Arrays.copyOf(_ids, 2 * _ids.length);
+        }
+        src.get(pos, _ids, _size * LENGTH, LENGTH);
+        if (2 * (_size + 1) > _slots.length) {
+            _slots = new int[2 * _slots.length];
+            for (int i = 0; i < _size; i++) {
+                place(i);
+            }
+        }
+        place(_size);
+        _size += 1;
+        return _size - 1;
+    }
+    /** Puts id INDEX in the first free slot from the one it hashes to.
+     * @param index index
+     **/
+    private void place(int index) {
+        int mask = _slots.length - 1;
+        int s = ByteBuffer.wrap(_ids).getInt(index * LENGTH) & mask;
+        while (_slots[s] != 0) {
+            s = (s + 1) & mask;
+        }
+        _slots[s] = index + 1;
+    }
+    /** Returns true if id INDEX is the one held in SRC at POS.
+     * @param index index
+     * @param src src
+     * @param pos pos
+     * @return boolean
+     **/
+    private boolean matches(int index, ByteBuffer src, int pos) {
+        int start = index * LENGTH;
+        for (int i = 0; i < LENGTH; i++) {
+            if (_ids[start + i] != src.get(pos + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Makes the changes one command makes to a repository durable and
+ *  atomic.
+ *
+ *  Objects (blobs, trees, commits and the files kept beside them) are
+ *  only ever added, and nothing names a new one until a ref or the
+ *  index does, so they are written as the command goes and noted here.
+ *  The mutable files, refs, HEAD and the index, are not written at
+ *  once but held here as updates, which reads see.
+ *
+ *  At the end of the command every noted file is fsynced, each once
+ *  however often it was written, all of them in parallel so the
+ *  filesystem can fold them into one flush; this is the group commit.
+ *  The updates are then written to a journal file named for the
+ *  process, which is fsynced and renamed into place: that rename is
+ *  the commit point. Each update is applied by renaming a synced copy
+ *  over its file, and the journal is deleted. A journal found when the
+ *  repository is opened is from a command that passed its commit point
+ *  but may not have applied every update, and is replayed, unless the
+ *  files it updates are still locked by the command applying it;
+ *  updates hold whole new contents, so replaying one twice does no
+ *  harm.
+ *  @author Adam
+ */
+final class Journal {
+    /** Directory every journaled file lies below. **/
+    private final File _root;
+    /** The journal of this process. **/
+    private final File _file;
+    /** Locks of the command the journal belongs to. **/
+    private final Locks _locks;
+    /** Files written since the last commit. **/
+    private final Set<File> _written = ConcurrentHashMap.newKeySet();
+    /** Pending new contents of mutable files, null for a deletion, in
+     *  the order they were made. **/
+    private final LinkedHashMap<File, byte[]> _updates =
+            new LinkedHashMap<>();
+
+    /** A journal for the files below ROOT, whose command holds LOCKS.
+     * @param root root
+     * @param locks locks
+     **/
+    Journal(File root, Locks locks) {
+        _root = root;
+        _file = Utils.join(root, "journal-" + ProcessHandle.current().pid());
+        _locks = locks;
+    }
+    /** Notes that FILE was written, so it is synced before the next
+     *  commit point, and its directory with it.
+     * @param file file
+     **/
+    void written(File file) {
+        _written.add(file);
+    }
+    /** Makes CONTENTS the new contents of FILE at the next commit, or
+     *  deletes it then if CONTENTS is null.
+     * @param file file
+     * @param contents contents
+     **/
+    synchronized void update(File file, byte[] contents) {
+        _updates.remove(file);
+        _updates.put(file, contents);
+    }
+    /** Returns true if FILE has an update waiting.
+     * @param file file
+     * @return boolean
+     **/
+    synchronized boolean isPending(File file) {
+        return _updates.containsKey(file);
+    }
+    /** Returns the waiting contents of FILE, or null if it is to be
+     *  deleted or has no update.
+     * @param file file
+     * @return byte[]
+     **/
+    synchronized byte[] pending(File file) {
+        return _updates.get(file);
+    }
+    /** Returns the files with updates waiting, mapped to their new
+     *  contents. **/
+    synchronized Map<File, byte[]> updates() {
+        return new LinkedHashMap<>(_updates);
+    }
+    /** Syncs the written files, then commits and applies the updates. **/
+    synchronized void commit() throws IOException {
+        ArrayList<File> written = new ArrayList<>(_written);
+        sync(written);
+        _written.clear();
+        if (_updates.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(_updates.size());
+        for (Map.Entry<File, byte[]> u : _updates.entrySet()) {
+            MetaStore.writeString(out, relative(u.getKey()));
+            out.writeInt(u.getValue() == null ? -1 : u.getValue().length);
+            if (u.getValue() != null) {
+                out.write(u.getValue());
+            }
+        }
+        File tmp = File.createTempFile("tmp-", null, _root);
+        Files.write(tmp.toPath(), bytes.toByteArray());
+        sync(List.of(tmp));
+        Files.move(tmp.toPath(), _file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(_root);
+        apply(_updates, _file);
+        _updates.clear();
+    }
+    /** Drops the updates of a command that failed, leaving the files
+     *  it wrote unsynced; nothing names them. **/
+    synchronized void abort() {
+        _updates.clear();
+        _written.clear();
+    }
+    /** Replays each journal left by a command that did not finish
+     *  applying it, if no command holds a lock on a file it updates. A
+     *  command deletes its journal before it unlocks, so one still there
+     *  once its files are locked here was left by a crash. **/
+    synchronized void recover() throws IOException {
+        for (String name : Utils.plainFilenamesIn(_root)) {
+            if (!name.startsWith("journal-")) {
+                continue;
+            }
+            File journal = Utils.join(_root, name);
+            LinkedHashMap<File, byte[]> updates = new LinkedHashMap<>();
+            byte[] contents;
+            try {
+                contents = Files.readAllBytes(journal.toPath());
+            } catch (NoSuchFileException excp) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(contents))) {
+                for (int n = in.readInt(); n > 0; n--) {
+                    File file = Utils.join(_root, MetaStore.readString(in));
+                    int length = in.readInt();
+                    updates.put(file, length < 0 ? null
+                            : in.readNBytes(length));
+                }
+            }
+            ArrayList<File> locked = new ArrayList<>();
+            boolean free = true;
+            for (File file : updates.keySet()) {
+                if (_locks.holds(file)) {
+                    continue;
+                }
+                if (!_locks.tryLock(file)) {
+                    free = false;
+                    break;
+                }
+                locked.add(file);
+            }
+            if (free && journal.exists()) {
+                apply(updates, journal);
+            }
+            for (File file : locked) {
+                _locks.unlock(file);
+            }
+        }
+    }
+
+    /** Writes each of UPDATES to its file, then deletes JOURNAL. Every
+     *  new copy is synced before any is renamed into place, and the
+     *  directories after, so once the journal is gone every update is
+     *  on disk.
+     * @param updates updates
+     * @param journal journal
+     **/
+    private void apply(Map<File, byte[]> updates, File journal)
+            throws IOException {
+        LinkedHashMap<File, File> copies = new LinkedHashMap<>();
+        for (Map.Entry<File, byte[]> u : updates.entrySet()) {
+            if (u.getValue() != null) {
+                File dir = u.getKey().getParentFile();
+                dir.mkdirs();
+                File tmp = File.createTempFile("tmp-", null, dir);
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(u.getValue());
+                }
+                copies.put(u.getKey(), tmp);
+            }
+        }
+        sync(new ArrayList<>(copies.values()));
+        TreeSet<File> dirs = new TreeSet<>();
+        for (Map.Entry<File, byte[]> u : updates.entrySet()) {
+            File tmp = copies.get(u.getKey());
+            if (tmp != null) {
+                Files.move(tmp.toPath(), u.getKey().toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                u.getKey().delete();
+            }
+            dirs.add(u.getKey().getParentFile());
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        journal.delete();
+    }
+    /** Returns the path of FILE relative to the root.
+     * @param file file
+     * @return String
+     **/
+    private String relative(File file) {
+        return _root.toPath().relativize(file.toPath()).toString()
+                .replace(File.separatorChar, '/');
+    }
+    /** Fsyncs FILES in parallel, then each of their directories once.
+     * @param files files
+     **/
+    static void sync(List<File> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        TreeSet<File> dirs = new TreeSet<>();
+        for (File f : files) {
+            dirs.add(f.getAbsoluteFile().getParentFile());
+            tasks.add(() -> {
+                if (f.exists()) {
+                    try (FileChannel channel = FileChannel.open(f.toPath(),
+                            StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                }
+                return null;
+            });
+        }
+        WorkTree.parallel(tasks);
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+    }
+    /** Fsyncs DIR, so the names in it are durable, where the platform
+     *  allows a directory to be opened.
+     * @param dir dir
+     **/
+    private static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+}
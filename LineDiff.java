@@ -0,0 +1,282 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line-level differencing and three-way merging of text.
+ *
+ *  Lines are first interned to small ints, so every later comparison
+ *  is an int comparison. Two sequences are matched with Myers' O(ND)
+ *  algorithm in its linear-space form: the middle snake of the edit
+ *  path is found by running the search from both ends at once, and the
+ *  halves on either side are solved recursively, so only two vectors
+ *  of the combined length are ever held.
+ *
+ *  A merge matches the base against each side, then walks the three in
+ *  step. Runs where the base lines are matched on both sides are
+ *  stable and copied; between them, a chunk changed on one side only
+ *  takes that side, one changed the same way on both takes either, and
+ *  anything else is a conflict covering just that chunk. The merge is
+ *  worked out on interned lines alone and handed out as line ranges of
+ *  the three versions, so the caller can copy the lines from wherever
+ *  they are kept.
+ *  @author Adam
+ */
+final class LineDiff {
+    /** Receives the chunks of a merge, in order. Within each version,
+     *  every range starts at or after the end of the one before. **/
+    interface Merged {
+        /** Takes lines [FROM, TO) of the base.
+         * @param from from
+         * @param to to
+         **/
+        void base(int from, int to) throws IOException;
+        /** Takes lines [FROM, TO) of our version.
+         * @param from from
+         * @param to to
+         **/
+        void ours(int from, int to) throws IOException;
+        /** Takes lines [FROM, TO) of their version.
+         * @param from from
+         * @param to to
+         **/
+        void theirs(int from, int to) throws IOException;
+        /** Takes a conflict between lines [AFROM, ATO) of our version
+         *  and lines [BFROM, BTO) of theirs.
+         * @param aFrom aFrom
+         * @param aTo aTo
+         * @param bFrom bFrom
+         * @param bTo bTo
+         **/
+        void conflict(int aFrom, int aTo, int bFrom, int bTo)
+                throws IOException;
+    }
+
+    /** Not instantiable. **/
+    private LineDiff() {
+    }
+
+    /** Returns the lines of TEXT, each with its line terminator, so
+     *  joining them gives TEXT back.
+     * @param text text
+     * @return List
+     **/
+    static List<String> lines(String text) {
+        ArrayList<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+    /** Returns LINES as ints, equal ints standing for equal lines, with
+     *  new lines numbered through IDS.
+     * @param lines lines
+     * @param ids ids
+     * @return int[]
+     **/
+    static int[] intern(List<String> lines, HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+    /** Returns a longest common subsequence of A and B as, for each
+     *  element of A, the index of the element of B it is matched with,
+     *  or -1.
+     * @param a a
+     * @param b b
+     * @return int[]
+     **/
+    static int[] match(int[] a, int[] b) {
+        int[] matches = new int[a.length];
+        Arrays.fill(matches, -1);
+        int offset = a.length + b.length + 2;
+        int[] forward = new int[2 * offset + 1];
+        int[] backward = new int[2 * offset + 1];
+        compare(a, 0, a.length, b, 0, b.length, matches, forward,
+                backward, offset);
+        return matches;
+    }
+    /** Merges A and B, both changed from O, handing the chunks of the
+     *  result to OUT, and returns true if any chunk conflicted. Each
+     *  version is given as its lines interned to ints.
+     * @param o o
+     * @param a a
+     * @param b b
+     * @param out out
+     * @return boolean
+     **/
+    static boolean merge(int[] o, int[] a, int[] b, Merged out)
+            throws IOException {
+        int[] toA = match(o, a);
+        int[] toB = match(o, b);
+        boolean conflict = false;
+        int io = 0;
+        int ia = 0;
+        int ib = 0;
+        while (io < o.length || ia < a.length || ib < b.length) {
+            int stable = 0;
+            while (io + stable < o.length && toA[io + stable] == ia + stable
+                    && toB[io + stable] == ib + stable) {
+                stable += 1;
+            }
+            if (stable > 0) {
+                out.base(io, io + stable);
+                io += stable;
+                ia += stable;
+                ib += stable;
+                continue;
+            }
+            int next = io;
+            while (next < o.length && (toA[next] < 0 || toB[next] < 0)) {
+                next += 1;
+            }
+            int aEnd = next < o.length ? toA[next] : a.length;
+            int bEnd = next < o.length ? toB[next] : b.length;
+            if (same(o, io, next, a, ia, aEnd)) {
+                out.theirs(ib, bEnd);
+            } else if (same(o, io, next, b, ib, bEnd)
+                    || same(a, ia, aEnd, b, ib, bEnd)) {
+                out.ours(ia, aEnd);
+            } else {
+                conflict = true;
+                out.conflict(ia, aEnd, ib, bEnd);
+            }
+            io = next;
+            ia = aEnd;
+            ib = bEnd;
+        }
+        return conflict;
+    }
+
+    /** Matches A[ALO, AHI) against B[BLO, BHI) into MATCHES, using
+     *  FORWARD and BACKWARD, centered on OFFSET, as scratch.
+     * @param a a
+     * @param aLo aLo
+     * @param aHi aHi
+     * @param b b
+     * @param bLo bLo
+     * @param bHi bHi
+     * @param matches matches
+     * @param forward forward
+     * @param backward backward
+     * @param offset offset
+     **/
+    private static void compare(int[] a, int aLo, int aHi, int[] b,
+                                int bLo, int bHi, int[] matches,
+                                int[] forward, int[] backward,
+                                int offset) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            matches[aLo++] = bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            matches[--aHi] = --bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(a, aLo, aHi, b, bLo, bHi, forward,
+                backward, offset);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x++, y++) {
+            matches[aLo + x] = bLo + y;
+        }
+        compare(a, aLo, aLo + snake[0], b, bLo, bLo + snake[1], matches,
+                forward, backward, offset);
+        compare(a, aLo + snake[2], aHi, b, bLo + snake[3], bHi, matches,
+                forward, backward, offset);
+    }
+    /** Returns the middle snake of a shortest edit path from
+     *  A[ALO, AHI) to B[BLO, BHI), as its start and end points
+     *  {x, y, u, v} relative to ALO and BLO. FORWARD and BACKWARD hold
+     *  the furthest x reached on each diagonal, centered on OFFSET.
+     * @param a a
+     * @param aLo aLo
+     * @param aHi aHi
+     * @param b b
+     * @param bLo bLo
+     * @param bHi bHi
+     * @param forward forward
+     * @param backward backward
+     * @param offset offset
+     * @return int[]
+     **/
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b,
+                                     int bLo, int bHi, int[] forward,
+                                     int[] backward, int offset) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d
+                        && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1]
+                        : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int r = delta - k;
+                if (odd && r >= -(d - 1) && r <= d - 1
+                        && x + backward[offset + r] >= n) {
+                    return new int[] {x0, y0, x, y};
+                }
+            }
+            for (int r = -d; r <= d; r += 2) {
+                int x = r == -d || (r != d
+                        && backward[offset + r - 1]
+                        < backward[offset + r + 1])
+                        ? backward[offset + r + 1]
+                        : backward[offset + r - 1] + 1;
+                int y = x - r;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m
+                        && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + r] = x;
+                int k = delta - r;
+                if (!odd && k >= -d && k <= d
+                        && x + forward[offset + k] >= n) {
+                    return new int[] {n - x, m - y, n - x0, m - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+    /** Returns true if A[ALO, AHI) and B[BLO, BHI) are equal.
+     * @param a a
+     * @param aLo aLo
+     * @param aHi aHi
+     * @param b b
+     * @param bLo bLo
+     * @param bHi bHi
+     * @return boolean
+     **/
+    private static boolean same(int[] a, int aLo, int aHi, int[] b,
+                                int bLo, int bHi) {
+        return Arrays.equals(a, aLo, aHi, b, bLo, bHi);
+    }
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** The lock files one command holds. A file is locked by creating
+ *  FILE.lock beside it, which the filesystem lets only one process do,
+ *  and unlocked by deleting it; the lock file holds the id of the
+ *  process, for whoever finds one left behind.
+ *
+ *  Only commands that change a file lock it, and they keep their locks
+ *  until their journal is applied, so a writer never reads state
+ *  another writer is about to replace. Readers take no locks: every
+ *  file they read is replaced whole by a rename, so they see it either
+ *  before an update or after. Locks are taken in one order, HEAD, the
+ *  index, then refs, and a lock is waited for at most TIMEOUT, so two
+ *  commands cannot wait on each other for good.
+ *
+ *  Counts of acquisitions, of those that found the lock taken, and of
+ *  the time spent waiting are kept for the whole process.
+ *  @author Adam
+ */
+final class Locks {
+    /** Longest wait for a lock, in milliseconds. **/
+    static final long TIMEOUT = 10000;
+    /** Longest pause between two tries, in milliseconds. **/
+    private static final long MAX_PAUSE = 50;
+    /** Lock files held by any command in this process, deleted if the
+     *  process exits while holding them. **/
+    private static final Set<File> HELD = ConcurrentHashMap.newKeySet();
+    /** Locks taken. **/
+    private static final AtomicLong ACQUIRED = new AtomicLong();
+    /** Tries that found the lock taken, once per lock and wait. **/
+    private static final AtomicLong CONTENDED = new AtomicLong();
+    /** Nanoseconds spent waiting for locks. **/
+    private static final AtomicLong WAITED = new AtomicLong();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (File lock : HELD) {
+                lock.delete();
+            }
+        }));
+    }
+
+    /** The files this command has locked, by their lock files. **/
+    private final LinkedHashSet<File> _held = new LinkedHashSet<>();
+
+    /** Locks FILE, waiting while another command holds it. Does nothing
+     *  if this command already holds it.
+     * @param file file
+     **/
+    synchronized void lock(File file) throws IOException {
+        if (tryLock(file)) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        long pause = 1;
+        try {
+            while (!create(lockFile(file))) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Unable to lock " + file
+                            + ": another command holds "
+                            + lockFile(file).getName()
+                            + "; if none is running, remove it.");
+                }
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted locking " + file);
+                }
+                pause = Math.min(MAX_PAUSE, 2 * pause);
+            }
+        } finally {
+            WAITED.addAndGet(System.nanoTime() - start);
+        }
+    }
+    /** Locks FILE if no other command holds it, returning true if this
+     *  command now holds it.
+     * @param file file
+     * @return boolean
+     **/
+    synchronized boolean tryLock(File file) throws IOException {
+        if (holds(file)) {
+            return true;
+        }
+        if (create(lockFile(file))) {
+            return true;
+        }
+        CONTENDED.incrementAndGet();
+        return false;
+    }
+    /** Returns true if this command holds the lock on FILE.
+     * @param file file
+     * @return boolean
+     **/
+    synchronized boolean holds(File file) {
+        return _held.contains(lockFile(file));
+    }
+    /** Unlocks FILE.
+     * @param file file
+     **/
+    synchronized void unlock(File file) {
+        File lock = lockFile(file);
+        if (_held.remove(lock)) {
+            HELD.remove(lock);
+            lock.delete();
+        }
+    }
+    /** Unlocks every file this command locked. **/
+    synchronized void unlockAll() {
+        for (File lock : _held) {
+            HELD.remove(lock);
+            lock.delete();
+        }
+        _held.clear();
+    }
+    /** Returns the lock counts of this process, on one line. **/
+    static String stats() {
+        return String.format("locks: %d acquired, %d contended,"
+                + " %.3f ms waiting", ACQUIRED.get(), CONTENDED.get(),
+                WAITED.get() / 1e6);
+    }
+
+    /** Creates LOCK, returning false if it already exists.
+     * @param lock lock
+     * @return boolean
+     **/
+    private boolean create(File lock) throws IOException {
+        lock.getParentFile().mkdirs();
+        try {
+            Files.write(lock.toPath(), (ProcessHandle.current().pid()
+                    + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE_NEW);
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        }
+        _held.add(lock);
+        HELD.add(lock);
+        ACQUIRED.incrementAndGet();
+        return true;
+    }
+    /** Returns the lock file of FILE.
+     * @param file file
+     * @return File
+     **/
+    private static File lockFile(File file) {
+        return new File(file.getPath() + ".lock");
+    }
+}
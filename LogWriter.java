@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/** Writes log entries as the commits come, through one buffer, so a
+ *  long log costs a write per buffer rather than per line and the first
+ *  entries are out before the rest of the history is read. Entries can
+ *  be limited in number and to a range of commit times.
+ *  @author Adam
+ */
+final class LogWriter implements Closeable {
+    /** Formats commit times. It is immutable, so one serves every log
+     *  and every thread. **/
+    static final DateTimeFormatter DATE =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z")
+                    .withZone(ZoneId.systemDefault());
+    /** Size of the output buffer in characters. **/
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Where entries go. **/
+    private final Writer _out;
+    /** True if merge commits get a line naming their parents. **/
+    private final boolean _merges;
+    /** Most entries to write. **/
+    private final int _limit;
+    /** Earliest commit time written, in milliseconds. **/
+    private final long _since;
+    /** Latest commit time written, in milliseconds. **/
+    private final long _until;
+    /** Entries written so far. **/
+    private int _count;
+
+    /** A writer to OUT of at most LIMIT entries for commits made from
+     *  SINCE to UNTIL, naming the parents of merges if MERGES.
+     * @param out out
+     * @param merges merges
+     * @param limit limit
+     * @param since since
+     * @param until until
+     **/
+    LogWriter(OutputStream out, boolean merges, int limit, long since,
+              long until) {
+        _out = new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE);
+        _merges = merges;
+        _limit = limit;
+        _since = since;
+        _until = until;
+    }
+    /** Writes the entry for the commit COMMIT is on if it is in range,
+     *  and returns false once no more entries will be written. The
+     *  entry is written straight from the view, so no String is made.
+     * @param commit commit
+     * @return boolean
+     **/
+    boolean write(CommitView commit) throws IOException {
+        if (_count >= _limit) {
+            return false;
+        }
+        long time = commit.time();
+        if (time < _since || time > _until) {
+            return true;
+        }
+        _out.write("===\ncommit ");
+        commit.writeId(_out);
+        _out.write('\n');
+        if (_merges && commit.isMerge()) {
+            _out.write("Merge: ");
+            commit.writeParent(0, _out, 7);
+            _out.write(' ');
+            commit.writeParent(1, _out, 7);
+            _out.write('\n');
+        }
+        _out.write("Date: ");
+        DATE.formatTo(Instant.ofEpochMilli(time), _out);
+        _out.write('\n');
+        commit.writeMsg(_out);
+        _out.write("\n\n");
+        _count += 1;
+        return _count < _limit;
+    }
+    /** Flushes what is buffered, leaving standard output open. **/
+    @Override
+    public void close() throws IOException {
+        _out.flush();
+    }
+}
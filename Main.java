@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/** Driver class for Gitlet, the tiny stupid version-control system.
+ *  @author Adam
+ */
+public class Main {
+    /** Name the repo was once saved under, kept for the signatures of
+     *  Gitlet.serialize and Gitlet.deserialize. **/
+    static final String REPO = ".gitlet/gitlet";
+    /** Fewest and most words each command takes, its name included. **/
+    private static final Map<String, int[]> OPERANDS = Map.ofEntries(
+            Map.entry("init", new int[] {1, 1}),
+            Map.entry("add", new int[] {2, Integer.MAX_VALUE}),
+            Map.entry("commit", new int[] {1, 2}),
+            Map.entry("rm", new int[] {2, Integer.MAX_VALUE}),
+            Map.entry("log", new int[] {1, Integer.MAX_VALUE}),
+            Map.entry("global-log", new int[] {1, Integer.MAX_VALUE}),
+            Map.entry("find", new int[] {2, Integer.MAX_VALUE}),
+            Map.entry("status", new int[] {1, 1}),
+            Map.entry("checkout", new int[] {2, 4}),
+            Map.entry("branch", new int[] {2, 2}),
+            Map.entry("rm-branch", new int[] {2, 2}),
+            Map.entry("reset", new int[] {2, 2}),
+            Map.entry("merge", new int[] {2, 2}),
+            Map.entry("gc", new int[] {1, 1}),
+            Map.entry("diff", new int[] {1, 3}),
+            Map.entry("sparse", new int[] {1, Integer.MAX_VALUE}));
+
+    /** Usage: java gitlet.Main ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....
+     * @param args args
+     **/
+    public static void main(String... args) throws Exception {
+        Gitlet git = dispatch(Gitlet.deserialize(REPO), args, System.out,
+                System.err);
+        Gitlet.serialize(git, REPO);
+    }
+    /** Runs command ARGS on GIT, the repo in the current directory or
+     *  null if there is none, after checking the command exists, takes
+     *  that many operands and, unless it is init, has a repo to run in.
+     *  The command prints what it reports to OUT and any statistics to
+     *  ERR. Returns the repo as the command left it, which for init is
+     *  the one it made.
+     * @param git git
+     * @param args args
+     * @param out out
+     * @param err err
+     * @return Gitlet
+     **/
+    static Gitlet dispatch(Gitlet git, String[] args, PrintStream out,
+                           PrintStream err) throws Exception {
+        if (args.length == 0) {
+            out.println("Please enter a command.");
+            return git;
+        }
+        int[] operands = OPERANDS.get(args[0]);
+        if (operands == null) {
+            out.println("No command with that name exists.");
+            return git;
+        }
+        if (args.length < operands[0] || args.length > operands[1]) {
+            out.println("Incorrect operands.");
+            return git;
+        }
+        if (args[0].equals("init")) {
+            if (git == null) {
+                git = new Gitlet();
+            }
+            git.output(out, err);
+            git.init(args);
+            return git;
+        }
+        if (git == null) {
+            out.println("Not in an initialized Gitlet directory.");
+            return null;
+        }
+        git.output(out, err);
+        switch (args[0]) {
+        case "add":
+            git.add(args);
+            break;
+        case "commit":
+            git.commit(args);
+            break;
+        case "rm":
+            git.rm(args);
+            break;
+        case "log":
+            git.log(args);
+            break;
+        case "global-log":
+            git.globalLog(args);
+            break;
+        case "find":
+            git.find(args);
+            break;
+        case "status":
+            git.status(args);
+            break;
+        case "checkout":
+            git.checkout(args);
+            break;
+        case "branch":
+            git.branch(args);
+            break;
+        case "rm-branch":
+            git.rmBranch(args);
+            break;
+        case "reset":
+            git.reset(args);
+            break;
+        case "merge":
+            git.merge(args);
+            break;
+        case "gc":
+            git.gc(args);
+            break;
+        case "diff":
+            git.diff(args);
+            break;
+        case "sparse":
+            git.sparse(args);
+            break;
+        default:
+            break;
+        }
+        return git;
+    }
+}
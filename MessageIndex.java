@@ -0,0 +1,389 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** An inverted index from the words of commit messages, and from
+ *  authors, to the commits that contain them. Commits are named by
+ *  their position in the commit graph, and each lookup returns the set
+ *  of positions that match, so queries combine with BitSet operations
+ *  and never read a commit.
+ *
+ *  The index is a sorted segment plus a tail. The segment holds a table
+ *  of term offsets followed by each term and its postings, and is
+ *  memory-mapped and binary-searched. New commits are appended to the
+ *  tail, which is read whole, and the two are merged into a new segment
+ *  once the tail holds more than MAX_TAIL commits.
+ *
+ *  Neither file is synced as commits are added. A tail cut short only
+ *  loses commits the store indexes again from the graph, and the
+ *  store empties an index that covers more commits than the graph.
+ *  @author Adam
+ */
+final class MessageIndex {
+    /** Commits allowed in the tail before it is merged. **/
+    private static final int MAX_TAIL = 1024;
+    /** Character that starts the term for an author. **/
+    private static final char AUTHOR = '@';
+
+    /** The sorted segment. **/
+    private final File _segmentFile;
+    /** The commits added since the segment was written. **/
+    private final File _tailFile;
+    /** The mapped segment, or null if there is none. **/
+    private MappedByteBuffer _segment;
+    /** Number of terms in the segment. **/
+    private int _terms;
+    /** Number of commits the segment covers. **/
+    private int _covered;
+    /** Postings of the tail by term. **/
+    private TreeMap<String, BitSet> _tail = new TreeMap<>();
+    /** Number of commits in the tail. **/
+    private int _tailCount;
+    /** True if commits added are written to the files, false if they
+     *  are only kept in memory, as when another command is writing
+     *  them. **/
+    private final boolean _writable;
+
+    /** Opens the index kept in SEGMENT and TAIL, writing the commits
+     *  added to it there if WRITABLE.
+     * @param segment segment
+     * @param tail tail
+     * @param writable writable
+     **/
+    MessageIndex(File segment, File tail, boolean writable)
+            throws IOException {
+        _segmentFile = segment;
+        _tailFile = tail;
+        _writable = writable;
+        mapSegment();
+        readTail();
+    }
+    /** Returns the number of commits indexed, which are those at
+     *  positions below it. **/
+    int size() {
+        return _covered + _tailCount;
+    }
+    /** Indexes COMMIT, which is at POSITION, the next one not indexed.
+     * @param position position
+     * @param commit commit
+     **/
+    void add(int position, CommitRecord commit) throws IOException {
+        TreeSet<String> terms = terms(commit);
+        if (_writable) {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            new FileOutputStream(_tailFile, true)))) {
+                out.writeInt(position);
+                out.writeInt(terms.size());
+                for (String term : terms) {
+                    MetaStore.writeString(out, term);
+                }
+            }
+        }
+        for (String term : terms) {
+            _tail.computeIfAbsent(term, k -> new BitSet()).set(position);
+        }
+        _tailCount += 1;
+        if (_writable && _tailCount > MAX_TAIL) {
+            compact();
+        }
+    }
+    /** Returns the words of MESSAGE: its runs of letters and digits, in
+     *  lower case.
+     * @param message message
+     * @return ArrayList
+     **/
+    static ArrayList<String> words(String message) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= message.length(); i++) {
+            char c = i < message.length() ? message.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+    /** Returns the commits whose message has the word WORD.
+     * @param word word
+     * @return BitSet
+     **/
+    BitSet word(String word) {
+        return exact(word.toLowerCase());
+    }
+    /** Returns the commits made by AUTHOR.
+     * @param author author
+     * @return BitSet
+     **/
+    BitSet author(String author) {
+        return exact(AUTHOR + author.toLowerCase());
+    }
+    /** Returns the commits whose message has a word starting with
+     *  PREFIX.
+     * @param prefix prefix
+     * @return BitSet
+     **/
+    BitSet prefix(String prefix) {
+        String p = prefix.toLowerCase();
+        BitSet result = new BitSet();
+        for (int i = lowerBound(p); i < _terms; i++) {
+            String term = term(i);
+            if (!term.startsWith(p)) {
+                break;
+            }
+            result.or(postings(i));
+        }
+        for (Map.Entry<String, BitSet> e : _tail.tailMap(p).entrySet()) {
+            if (!e.getKey().startsWith(p)) {
+                break;
+            }
+            result.or(e.getValue());
+        }
+        return result;
+    }
+    /** Returns the commits whose message has a word containing PART.
+     *  Every word is looked at, but there are far fewer distinct words
+     *  than commits.
+     * @param part part
+     * @return BitSet
+     **/
+    BitSet containing(String part) {
+        String p = part.toLowerCase();
+        BitSet result = new BitSet();
+        for (int i = 0; i < _terms; i++) {
+            String term = term(i);
+            if (term.charAt(0) != AUTHOR && term.contains(p)) {
+                result.or(postings(i));
+            }
+        }
+        for (Map.Entry<String, BitSet> e : _tail.entrySet()) {
+            if (e.getKey().charAt(0) != AUTHOR && e.getKey().contains(p)) {
+                result.or(e.getValue());
+            }
+        }
+        return result;
+    }
+    /** Empties the index, and its files if they are written, so it can
+     *  be built again. **/
+    void reset() {
+        if (_writable) {
+            _tailFile.delete();
+            _segmentFile.delete();
+        }
+        _segment = null;
+        _terms = 0;
+        _covered = 0;
+        _tail = new TreeMap<>();
+        _tailCount = 0;
+    }
+    /** Merges the tail into a new segment, unless the index is only
+     *  kept in memory. The new segment is synced, and the tail deleted
+     *  before the segment replaces the old, so a crash in between only
+     *  loses commits that are indexed again. **/
+    void compact() throws IOException {
+        if (!_writable) {
+            return;
+        }
+        TreeMap<String, BitSet> all = new TreeMap<>(_tail);
+        for (int i = 0; i < _terms; i++) {
+            all.merge(term(i), postings(i), (a, b) -> {
+                BitSet both = (BitSet) a.clone();
+                both.or(b);
+                return both;
+            });
+        }
+        File tmp = File.createTempFile("tmp-", null,
+                _segmentFile.getParentFile());
+        FileOutputStream file = new FileOutputStream(tmp);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(file))) {
+            out.writeInt(size());
+            out.writeInt(all.size());
+            long offset = 8 + 8L * all.size();
+            for (Map.Entry<String, BitSet> e : all.entrySet()) {
+                out.writeLong(offset);
+                offset += 4 + e.getKey().getBytes(StandardCharsets.UTF_8)
+                        .length + 4 + 4L * e.getValue().cardinality();
+            }
+            for (Map.Entry<String, BitSet> e : all.entrySet()) {
+                MetaStore.writeString(out, e.getKey());
+                out.writeInt(e.getValue().cardinality());
+                for (int p = e.getValue().nextSetBit(0); p >= 0;
+                     p = e.getValue().nextSetBit(p + 1)) {
+                    out.writeInt(p);
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        _tailFile.delete();
+        Files.move(tmp.toPath(), _segmentFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        _tail = new TreeMap<>();
+        _tailCount = 0;
+        mapSegment();
+    }
+    /** Returns the terms COMMIT is indexed under.
+     * @param commit commit
+     * @return TreeSet
+     **/
+    private static TreeSet<String> terms(CommitRecord commit) {
+        TreeSet<String> terms = new TreeSet<>(words(commit.getMsg()));
+        if (commit.getAuthor() != null) {
+            terms.add(AUTHOR + commit.getAuthor().toLowerCase());
+        }
+        return terms;
+    }
+    /** Returns the commits indexed under TERM.
+     * @param term term
+     * @return BitSet
+     **/
+    private BitSet exact(String term) {
+        BitSet result = new BitSet();
+        int i = lowerBound(term);
+        if (i < _terms && term(i).equals(term)) {
+            result.or(postings(i));
+        }
+        BitSet recent = _tail.get(term);
+        if (recent != null) {
+            result.or(recent);
+        }
+        return result;
+    }
+    /** Returns the position of the first term in the segment that is
+     *  not less than TERM.
+     * @param term term
+     * @return int
+     **/
+    private int lowerBound(String term) {
+        int lo = 0;
+        int hi = _terms;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (term(mid).compareTo(term) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    /** Returns the I-th term of the segment.
+     * @param i i
+     * @return String
+     **/
+    private String term(int i) {
+        ByteBuffer entry = entry(i);
+        byte[] bytes = new byte[entry.getInt()];
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    /** Returns the postings of the I-th term of the segment.
+     * @param i i
+     * @return BitSet
+     **/
+    private BitSet postings(int i) {
+        ByteBuffer entry = entry(i);
+        entry.position(entry.position() + 4 + entry.getInt());
+        BitSet result = new BitSet(_covered);
+        for (int n = entry.getInt(); n > 0; n--) {
+            result.set(entry.getInt());
+        }
+        return result;
+    }
+    /** Returns a view of the segment starting at the I-th entry.
+     * @param i i
+     * @return ByteBuffer
+     **/
+    private ByteBuffer entry(int i) {
+        ByteBuffer entry = _segment.duplicate();
+        entry.position((int) _segment.getLong(8 + 8 * i));
+        return entry;
+    }
+    /** Maps the segment, if there is one. **/
+    private void mapSegment() throws IOException {
+        _segment = null;
+        _terms = 0;
+        _covered = 0;
+        if (!_segmentFile.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(_segmentFile.toPath(),
+                StandardOpenOption.READ)) {
+            _segment = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        _covered = _segment.getInt(0);
+        _terms = _segment.getInt(4);
+    }
+    /** Reads the tail, if there is one. Commits the segment already
+     *  covers are skipped, and a commit cut off by a crash is cut from
+     *  the file so it can be indexed again. **/
+    private void readTail() throws IOException {
+        if (!_tailFile.exists()) {
+            return;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_tailFile)))) {
+            while (true) {
+                int position;
+                long length = 8;
+                ArrayList<String> terms = new ArrayList<>();
+                try {
+                    position = in.readInt();
+                    for (int n = in.readInt(); n > 0; n--) {
+                        String term = MetaStore.readString(in);
+                        terms.add(term);
+                        length += 4 + term.getBytes(StandardCharsets.UTF_8)
+                                .length;
+                    }
+                } catch (EOFException excp) {
+                    break;
+                }
+                if (position > size()) {
+                    break;
+                }
+                valid += length;
+                if (position < size()) {
+                    continue;
+                }
+                for (String term : terms) {
+                    _tail.computeIfAbsent(term, k -> new BitSet())
+                            .set(position);
+                }
+                _tailCount += 1;
+            }
+        }
+        if (_writable && valid < _tailFile.length()) {
+            try (RandomAccessFile tail = new RandomAccessFile(_tailFile,
+                    "rw")) {
+                tail.setLength(valid);
+            }
+        }
+    }
+}
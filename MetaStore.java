@@ -0,0 +1,660 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** Persistent repository metadata. Commits and trees are appended to
+ *  logs and found through a small id to offset index, with a commit
+ *  graph and a message index beside the commits for ancestry queries
+ *  and searches, while HEAD, each branch ref and the staging index live
+ *  in their own small files so a command only reads and writes what it
+ *  touches.
+ *
+ *  A command locks each of those files before it changes it, and keeps
+ *  the lock until its journal is applied; commands that only read take
+ *  no locks. The commit graph and message index are written only by a
+ *  command that makes commits, which locks them first; any other opens
+ *  them read-only, and keeps what it adds to them in memory.
+ *
+ *  Only the layout described here is read. Earlier layouts were never
+ *  released, so nothing converts them.
+ *  @author Adam
+ */
+final class MetaStore {
+    /** Length in bytes of a binary id. **/
+    static final int HASH_BYTES = 20;
+    /** Shortest abbreviated commit id that is looked up. **/
+    static final int MIN_PREFIX = 4;
+
+    /** Commit records. **/
+    private final RecordLog _commits;
+    /** Tree records. **/
+    private final RecordLog _trees;
+    /** File the commit graph is kept in. **/
+    private final File _graphFile;
+    /** The commit graph, read on first use. **/
+    private CommitGraph _graph;
+    /** True if the graph had to be built again when it was read, which
+     *  leaves the message index naming the wrong commits. **/
+    private boolean _graphRebuilt;
+    /** The sorted part of the message index. **/
+    private final File _searchFile;
+    /** Commits added to the message index since it was sorted. **/
+    private final File _searchTailFile;
+    /** The message index, read on first use. **/
+    private MessageIndex _search;
+    /** Name of the current branch. **/
+    private final File _headFile;
+    /** Directory holding one file per branch, naming its tip. **/
+    private final File _refsDir;
+    /** Branch tips gathered into one file, for branches that have no
+     *  file of their own in _refsDir. **/
+    private final File _packedRefsFile;
+    /** Contents of _packedRefsFile, read on first use. **/
+    private TreeMap<String, String> _packedRefs;
+    /** Staged and removed files, and the stat of tracked files. **/
+    private final File _indexFile;
+    /** Repository settings. **/
+    private final File _configFile;
+    /** Patterns of the paths a sparse checkout materializes. **/
+    private final File _sparseFile;
+    /** Holds this command's updates until they are committed. **/
+    private final Journal _journal;
+    /** The files this command has locked. **/
+    private final Locks _locks;
+    /** File key of the index as it was read, or null if there was
+     *  none; it changes each time the index is replaced. **/
+    private Object _indexKey;
+
+    /** Opens the store kept in DIR.
+     * @param dir dir
+     **/
+    MetaStore(File dir) {
+        _locks = new Locks();
+        _journal = new Journal(dir, _locks);
+        _commits = new RecordLog(Utils.join(dir, "commits.dat"),
+                Utils.join(dir, "commits.idx"),
+                Utils.join(dir, "commits.sorted"), _journal, _locks);
+        _trees = new RecordLog(Utils.join(dir, "trees.dat"),
+                Utils.join(dir, "trees.idx"), Utils.join(dir, "trees.sorted"),
+                _journal, _locks);
+        _graphFile = Utils.join(dir, "commit-graph");
+        _searchFile = Utils.join(dir, "search");
+        _searchTailFile = Utils.join(dir, "search.tail");
+        _headFile = Utils.join(dir, "HEAD");
+        _refsDir = Utils.join(dir, "refs", "heads");
+        _packedRefsFile = Utils.join(dir, "packed-refs");
+        _indexFile = Utils.join(dir, "index");
+        _configFile = Utils.join(dir, "config");
+        _sparseFile = Utils.join(dir, "sparse");
+    }
+    /** Returns true if a repository has been initialized in DIR.
+     * @param dir dir
+     * @return boolean
+     **/
+    static boolean exists(File dir) {
+        return Utils.join(dir, "HEAD").exists();
+    }
+    /** Returns the journal the store's writes go through. **/
+    Journal journal() {
+        return _journal;
+    }
+    /** Makes everything this command wrote durable, then applies its
+     *  updates to refs, HEAD and the index as one. **/
+    void commit() throws IOException {
+        _journal.commit();
+    }
+    /** Finishes the updates of a command cut off after its commit
+     *  point, and cuts from the logs any record a crash left half
+     *  written. **/
+    void recover() throws IOException {
+        _journal.recover();
+        _commits.recover();
+        _trees.recover();
+    }
+    /** Locks HEAD. **/
+    void lockHead() throws IOException {
+        _locks.lock(_headFile);
+    }
+    /** Locks the staging index, returning true if another command has
+     *  replaced it since it was read. **/
+    boolean lockIndex() throws IOException {
+        _locks.lock(_indexFile);
+        return !Objects.equals(_indexKey, fileKey(_indexFile));
+    }
+    /** Locks the staging index if no other command holds it, returning
+     *  true if it is now locked and has not changed since it was read,
+     *  so it can be written back without losing another's update. **/
+    boolean tryLockIndex() throws IOException {
+        boolean held = _locks.holds(_indexFile);
+        if (!_locks.tryLock(_indexFile)) {
+            return false;
+        }
+        if (Objects.equals(_indexKey, fileKey(_indexFile))) {
+            return true;
+        }
+        if (!held) {
+            _locks.unlock(_indexFile);
+        }
+        return false;
+    }
+    /** Locks the commit graph and the message index, after which both
+     *  are read afresh and commits added to them are written out. Taken
+     *  after any ref, by commands that make commits. **/
+    void lockGraph() throws IOException {
+        if (!_locks.holds(_graphFile)) {
+            _locks.lock(_graphFile);
+            _locks.lock(_searchFile);
+            _graph = null;
+            _search = null;
+        }
+    }
+    /** Locks BRANCH, after which its tip is read afresh.
+     * @param branch branch
+     **/
+    void lockRef(String branch) throws IOException {
+        _locks.lock(Utils.join(_refsDir, branch));
+        _packedRefs = null;
+    }
+    /** Releases every lock this command holds. **/
+    void unlock() {
+        _locks.unlockAll();
+    }
+    /** Drops the updates of a failed command and releases its locks. **/
+    void abort() {
+        _journal.abort();
+        unlock();
+    }
+    /** Readies the store for another command in the same process,
+     *  picking up what other processes changed since the last. Commits
+     *  and trees read so far stay cached, as records never change; the
+     *  refs are read again, and the commit graph and message index,
+     *  which were only written under locks now released, are opened
+     *  again on first use. **/
+    void refresh() throws IOException {
+        _commits.refresh();
+        _trees.refresh();
+        _packedRefs = null;
+        _graph = null;
+        _search = null;
+    }
+
+    /** Returns the name of the current branch. **/
+    String readHead() {
+        return readText(_headFile).trim();
+    }
+    /** Points HEAD at BRANCH.
+     * @param branch branch
+     **/
+    void writeHead(String branch) throws IOException {
+        replace(_headFile, branch + "\n");
+    }
+    /** Returns the codec new blobs are written with. **/
+    Codec readCodec() {
+        String config = readText(_configFile);
+        if (config == null) {
+            return Codec.STORE;
+        }
+        for (String line : config.split("\n")) {
+            if (line.startsWith("codec ")) {
+                return Codec.named(line.substring("codec ".length()));
+            }
+        }
+        return Codec.STORE;
+    }
+    /** Makes new blobs use CODEC.
+     * @param codec codec
+     **/
+    void writeCodec(Codec codec) throws IOException {
+        replace(_configFile, "codec " + codec.name().toLowerCase() + "\n");
+    }
+    /** Returns the sparse checkout patterns, one per line of their
+     *  file, or an empty list if every path is checked out. **/
+    List<String> readSparse() {
+        ArrayList<String> patterns = new ArrayList<>();
+        String sparse = readText(_sparseFile);
+        if (sparse != null) {
+            for (String line : sparse.split("\n")) {
+                if (!line.isEmpty()) {
+                    patterns.add(line);
+                }
+            }
+        }
+        return patterns;
+    }
+    /** Makes PATTERNS the sparse checkout patterns; with none, every
+     *  path is checked out.
+     * @param patterns patterns
+     **/
+    void writeSparse(List<String> patterns) throws IOException {
+        if (patterns.isEmpty()) {
+            delete(_sparseFile);
+        } else {
+            replace(_sparseFile, String.join("\n", patterns) + "\n");
+        }
+    }
+    /** Returns the id of the tip of BRANCH, or null if there is no
+     *  such branch.
+     * @param branch branch
+     * @return String
+     **/
+    String readRef(String branch) throws IOException {
+        String loose = readText(Utils.join(_refsDir, branch));
+        if (loose != null) {
+            return loose.trim();
+        }
+        return packedRefs().get(branch);
+    }
+    /** Points BRANCH at commit SHA1, writing only that branch's file.
+     * @param branch branch
+     * @param sha1 sha1
+     **/
+    void writeRef(String branch, String sha1) throws IOException {
+        packedRefs();
+        replace(Utils.join(_refsDir, branch), sha1 + "\n");
+    }
+    /** Deletes BRANCH.
+     * @param branch branch
+     **/
+    void deleteRef(String branch) throws IOException {
+        delete(Utils.join(_refsDir, branch));
+        _locks.lock(_packedRefsFile);
+        _packedRefs = null;
+        if (packedRefs().remove(branch) != null) {
+            writePackedRefs();
+        }
+    }
+    /** Returns every branch mapped to the id of its tip. **/
+    TreeMap<String, String> readRefs() throws IOException {
+        TreeMap<String, String> refs = new TreeMap<>(packedRefs());
+        readLooseRefs(_refsDir, "", refs);
+        Path dir = _refsDir.toPath();
+        for (Map.Entry<File, byte[]> u : _journal.updates().entrySet()) {
+            Path path = u.getKey().toPath();
+            if (path.startsWith(dir)) {
+                String name = dir.relativize(path).toString()
+                        .replace(File.separatorChar, '/');
+                if (u.getValue() != null) {
+                    refs.put(name, new String(u.getValue(),
+                            StandardCharsets.UTF_8).trim());
+                } else if (!packedRefs().containsKey(name)) {
+                    refs.remove(name);
+                }
+            }
+        }
+        return refs;
+    }
+    /** Gathers every branch into the packed refs and deletes their own
+     *  files, locking each before its tip is read. **/
+    void packRefs() throws IOException {
+        ArrayList<File> loose = new ArrayList<>();
+        for (String branch : readRefs().keySet()) {
+            loose.add(Utils.join(_refsDir, branch));
+            _locks.lock(loose.get(loose.size() - 1));
+        }
+        _locks.lock(_packedRefsFile);
+        _packedRefs = null;
+        TreeMap<String, String> refs = new TreeMap<>(packedRefs());
+        for (File file : loose) {
+            String tip = readText(file);
+            if (tip != null) {
+                refs.put(_refsDir.toPath().relativize(file.toPath())
+                        .toString().replace(File.separatorChar, '/'),
+                        tip.trim());
+            }
+        }
+        _packedRefs = refs;
+        writePackedRefs();
+        for (File file : loose) {
+            delete(file);
+        }
+    }
+    /** Adds the branches with files under DIR to REFS, their names
+     *  starting with PREFIX.
+     * @param dir dir
+     * @param prefix prefix
+     * @param refs refs
+     **/
+    private void readLooseRefs(File dir, String prefix,
+                               TreeMap<String, String> refs) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = prefix + child.getName();
+            if (child.isDirectory()) {
+                readLooseRefs(child, name + "/", refs);
+            } else if (!child.getName().startsWith("tmp-")
+                    && !child.getName().endsWith(".lock")) {
+                refs.put(name, Utils.readContentsAsString(child).trim());
+            }
+        }
+    }
+    /** Returns the packed refs, reading them on first use. **/
+    private TreeMap<String, String> packedRefs() {
+        if (_packedRefs == null) {
+            _packedRefs = new TreeMap<>();
+            String packed = readText(_packedRefsFile);
+            if (packed != null) {
+                for (String line : packed.split("\n")) {
+                    int space = line.indexOf(' ');
+                    if (space > 0) {
+                        _packedRefs.put(line.substring(space + 1),
+                                line.substring(0, space));
+                    }
+                }
+            }
+        }
+        return _packedRefs;
+    }
+    /** Writes the packed refs back. **/
+    private void writePackedRefs() throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> e : _packedRefs.entrySet()) {
+            out.append(e.getValue()).append(' ')
+                    .append(e.getKey()).append('\n');
+        }
+        replace(_packedRefsFile, out.toString());
+    }
+    /** Locks FILE and makes TEXT its contents when this command
+     *  commits; until then the store reads it from the journal.
+     * @param file file
+     * @param text text
+     **/
+    private void replace(File file, String text) throws IOException {
+        _locks.lock(file);
+        _journal.update(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+    /** Locks FILE and deletes it when this command commits.
+     * @param file file
+     **/
+    private void delete(File file) throws IOException {
+        _locks.lock(file);
+        _journal.update(file, null);
+    }
+    /** Returns the key identifying the file at FILE, or null if there
+     *  is none.
+     * @param file file
+     * @return Object
+     **/
+    private static Object fileKey(File file) throws IOException {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException excp) {
+            return null;
+        }
+    }
+    /** Returns the contents of FILE as this command sees them, with any
+     *  update it made, or null if there is no such file.
+     * @param file file
+     * @return String
+     **/
+    private String readText(File file) {
+        if (_journal.isPending(file)) {
+            byte[] contents = _journal.pending(file);
+            return contents == null ? null
+                    : new String(contents, StandardCharsets.UTF_8);
+        }
+        return file.isFile() ? Utils.readContentsAsString(file) : null;
+    }
+
+    /** Fills STAGED, REMOVED and STATS from the staging index.
+     * @param staged staged
+     * @param removed removed
+     * @param stats stats
+     **/
+    void readIndex(Map<String, String> staged, Collection<String> removed,
+                   StatCache stats) throws IOException {
+        _indexKey = fileKey(_indexFile);
+        if (_indexKey == null) {
+            return;
+        }
+        long written = Files.getLastModifiedTime(_indexFile.toPath())
+                .to(TimeUnit.NANOSECONDS);
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Utils.readContents(_indexFile)))) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String name = readString(in);
+                staged.put(name, readString(in));
+            }
+            size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                removed.add(readString(in));
+            }
+            stats.read(in, written);
+        }
+    }
+    /** Replaces the staging index with STAGED, REMOVED and STATS.
+     * @param staged staged
+     * @param removed removed
+     * @param stats stats
+     **/
+    void writeIndex(Map<String, String> staged, Collection<String> removed,
+                    StatCache stats) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(staged.size());
+            for (Map.Entry<String, String> e : staged.entrySet()) {
+                writeString(out, e.getKey());
+                writeString(out, e.getValue());
+            }
+            out.writeInt(removed.size());
+            for (String s : removed) {
+                writeString(out, s);
+            }
+            stats.write(out);
+        }
+        _locks.lock(_indexFile);
+        _journal.update(_indexFile, bytes.toByteArray());
+    }
+
+    /** Appends COMMIT to the log unless it is already there.
+     * @param commit commit
+     **/
+    void appendCommit(CommitRecord commit) throws IOException {
+        if (!_commits.contains(commit.getSha1())) {
+            _commits.append(commit.getSha1(), commit.encode());
+            graph().append(commit);
+            search();
+        }
+    }
+    /** Returns the commit graph, first adding the commits at the end
+     *  of the log that it is missing, as when the command that wrote
+     *  them could not lock it or a crash cut them from the graph.
+     *
+     *  Commits are only appended to the log with the graph locked, so
+     *  the graph holds the commits of the log in the same order, and is
+     *  checked by its last record alone: a graph whose last commit is
+     *  not at the same place in the log, as after a crash cut the log,
+     *  is built again from the log. Opening the graph so costs only the
+     *  commits it lacks, not one lookup per commit in history. **/
+    CommitGraph graph() throws IOException {
+        if (_graph == null) {
+            _graph = new CommitGraph(_graphFile, _locks.holds(_graphFile));
+            _graphRebuilt = false;
+            int last = _graph.size() - 1;
+            if (last >= 0 && _commits.entry(_graph.ids(), last) != last) {
+                _graph.reset();
+                _graphRebuilt = true;
+            }
+            for (int e = _graph.size(); e < _commits.size(); e++) {
+                _graph.append(readCommit(_commits.id(e)));
+            }
+        }
+        return _graph;
+    }
+    /** Returns the message index, first indexing any commits in the
+     *  graph that it is missing, the newest of which is usually the one
+     *  just appended. An index that does not match the graph is built
+     *  again. **/
+    MessageIndex search() throws IOException {
+        CommitGraph graph = graph();
+        if (_search == null) {
+            _search = new MessageIndex(_searchFile, _searchTailFile,
+                    _locks.holds(_searchFile));
+            if (_graphRebuilt || _search.size() > graph.size()) {
+                _search.reset();
+            }
+        }
+        for (int p = _search.size(); p < graph.size(); p++) {
+            _search.add(p, readCommit(graph.id(p)));
+        }
+        return _search;
+    }
+    /** Returns true if a commit with id SHA1 exists.
+     * @param sha1 sha1
+     * @return boolean
+     **/
+    boolean containsCommit(String sha1) throws IOException {
+        return _commits.contains(sha1);
+    }
+    /** Returns the ids of every commit, in the order they were written. **/
+    Iterable<String> commitIds() throws IOException {
+        return _commits.ids();
+    }
+    /** Returns the commits whose ids start with PREFIX, stopping at the
+     *  second, so that more than one means PREFIX is ambiguous. A prefix
+     *  shorter than MIN_PREFIX or not in hex matches nothing.
+     * @param prefix prefix
+     * @return List
+     **/
+    List<String> resolveCommit(String prefix) throws IOException {
+        String hex = prefix.toLowerCase();
+        if (hex.length() < MIN_PREFIX || hex.length() > 2 * HASH_BYTES
+                || !hex.matches("[0-9a-f]+")) {
+            return new ArrayList<>();
+        }
+        return _commits.resolve(hex);
+    }
+    /** Returns the commit with id SHA1, or null if there is none.
+     * @param sha1 sha1
+     * @return CommitRecord
+     **/
+    CommitRecord readCommit(String sha1) throws IOException {
+        byte[] record = _commits.read(sha1);
+        if (record == null) {
+            return null;
+        }
+        return CommitRecord.decode(new DataInputStream(
+                new ByteArrayInputStream(record)));
+    }
+    /** Returns a view for reading commits in place, on none yet. **/
+    CommitView commitView() {
+        return new CommitView(_commits);
+    }
+    /** Streams the commits in the log to VISITOR, oldest first, until
+     *  it returns false, moving one view from each to the next.
+     * @param visitor visitor
+     **/
+    void forEachCommit(CommitVisitor visitor) throws IOException {
+        CommitView commit = commitView();
+        int count = commit.count();
+        for (int i = 0; i < count; i++) {
+            commit.moveTo(i);
+            if (!visitor.visit(commit)) {
+                return;
+            }
+        }
+    }
+    /** Appends TREE to the log unless it is already there.
+     * @param tree tree
+     **/
+    void appendTree(Tree tree) throws IOException {
+        if (!_trees.contains(tree.getSha1())) {
+            _trees.append(tree.getSha1(), tree.encode());
+        }
+    }
+    /** Returns the tree with id SHA1.
+     * @param sha1 sha1
+     * @return Tree
+     **/
+    Tree readTree(String sha1) throws IOException {
+        byte[] record = _trees.read(sha1);
+        if (record == null) {
+            throw new IOException("missing tree " + sha1);
+        }
+        return Tree.decode(record);
+    }
+
+    /** Writes S as a length-prefixed UTF-8 string.
+     * @param out out
+     * @param s s
+     **/
+    static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    /** Reads a string written by writeString.
+     * @param in in
+     * @return String
+     **/
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    /** Reads a binary id and returns it in hex.
+     * @param in in
+     * @return String
+     **/
+    static String readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[HASH_BYTES];
+        in.readFully(hash);
+        return toHex(hash);
+    }
+    /** Returns HASH in lower-case hex.
+     * @param hash hash
+     * @return String
+     **/
+    static String toHex(byte[] hash) {
+        StringBuilder out = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            out.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return out.toString();
+    }
+    /** Returns the bytes of the hex string HEX.
+     * @param hex hex
+     * @return byte[]
+     **/
+    static byte[] fromHex(String hex) {
+        byte[] hash = new byte[hex.length() / 2];
+        for (int i = 0; i < hash.length; i++) {
+            hash[i] = (byte) Integer.parseInt(
+                    hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return hash;
+    }
+
+    /** Receives commits during a scan. **/
+    interface CommitVisitor {
+        /** Handles the commit COMMIT is on and returns false to end the
+         *  scan.
+         * @param commit commit
+         * @return boolean
+         **/
+        boolean visit(CommitView commit) throws IOException;
+    }
+}
@@ -0,0 +1,431 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A pack of blobs in one file, index included. Successive versions
+ *  of a path are stored as deltas against the version before, and the
+ *  file is memory-mapped so one blob can be rebuilt without reading
+ *  the rest of the pack.
+ *
+ *  The pack is a sequence of entries: a kind byte (whole or delta), a
+ *  codec byte, the offset of the base entry for deltas, then the
+ *  encoded length and the encoded contents. The index follows: a
+ *  256-entry fan-out table of cumulative counts by first id byte, the
+ *  sorted ids and then the offset of each one's entry. The last eight
+ *  bytes are the offset of the index. Since data and index are one
+ *  file, a new pack replaces the old with a single rename, and a
+ *  reader that opened either sees offsets that match its data.
+ *
+ *  Blobs are streamed into a new pack. Only a version small enough to
+ *  be diffed is held in memory, with the version before it.
+ *  @author Adam
+ */
+final class PackFile {
+    /** Entry kind holding whole contents. **/
+    private static final int WHOLE = 0;
+    /** Entry kind holding a delta against another entry. **/
+    private static final int DELTA = 1;
+    /** Longest chain of deltas before a version is stored whole. **/
+    private static final int MAX_DEPTH = 50;
+    /** Largest blob that is considered for delta compression. **/
+    private static final int MAX_DELTA_SIZE = 64 << 20;
+    /** Entries in the fan-out table. **/
+    private static final int FANOUT = 256;
+    /** Length of an entry's header. **/
+    private static final int HEADER = 2 + 8 + 4;
+    /** Name of the pack in its directory. **/
+    static final String NAME = "pack";
+
+    /** The mapped pack, or null if it is too large to map at once. **/
+    private final MappedByteBuffer _pack;
+    /** The pack, for entries that cannot be read from _pack. **/
+    private final FileChannel _channel;
+    /** The mapped index. **/
+    private final MappedByteBuffer _index;
+    /** Number of blobs in the pack. **/
+    private final int _count;
+
+    /** Opens the pack PACK.
+     * @param pack pack
+     **/
+    private PackFile(File pack) throws IOException {
+        _channel = FileChannel.open(pack.toPath(), StandardOpenOption.READ);
+        long size = _channel.size();
+        ByteBuffer trailer = ByteBuffer.allocate(8);
+        _channel.read(trailer, size - 8);
+        long index = trailer.getLong(0);
+        _pack = size <= Integer.MAX_VALUE
+                ? _channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                : null;
+        _index = _channel.map(FileChannel.MapMode.READ_ONLY, index,
+                size - 8 - index);
+        _count = _index.getInt((FANOUT - 1) * 4);
+    }
+    /** Returns the pack in DIR, or null if there is none.
+     * @param dir dir
+     * @return PackFile
+     **/
+    static PackFile open(File dir) throws IOException {
+        File pack = Utils.join(dir, NAME);
+        if (!pack.exists()) {
+            return null;
+        }
+        return new PackFile(pack);
+    }
+
+    /** Returns true if blob ID is in this pack.
+     * @param id id
+     * @return boolean
+     **/
+    boolean contains(String id) {
+        return find(MetaStore.fromHex(id)) >= 0;
+    }
+    /** Returns the contents of blob ID, or null if it is not here.
+     * @param id id
+     * @return byte[]
+     **/
+    byte[] read(String id) throws IOException {
+        int i = find(MetaStore.fromHex(id));
+        if (i < 0) {
+            return null;
+        }
+        return readEntry(offsetAt(i));
+    }
+    /** Returns the id of every blob in this pack. **/
+    String[] ids() {
+        String[] ids = new String[_count];
+        byte[] hash = new byte[MetaStore.HASH_BYTES];
+        for (int i = 0; i < _count; i++) {
+            _index.get(idOffset(i), hash);
+            ids[i] = MetaStore.toHex(hash);
+        }
+        return ids;
+    }
+    /** Releases the pack's file handle. **/
+    void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Returns the position of ID in the index, or -1.
+     * @param id id
+     * @return int
+     **/
+    private int find(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : _index.getInt((first - 1) * 4);
+        int hi = _index.getInt(first * 4) - 1;
+        byte[] probe = new byte[MetaStore.HASH_BYTES];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            _index.get(idOffset(mid), probe);
+            int cmp = Arrays.compareUnsigned(probe, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    /** Returns where the I-th id starts in the index.
+     * @param i i
+     * @return int
+     **/
+    private int idOffset(int i) {
+        return FANOUT * 4 + i * MetaStore.HASH_BYTES;
+    }
+    /** Returns the pack offset of the I-th blob in the index.
+     * @param i i
+     * @return long
+     **/
+    private long offsetAt(int i) {
+        return _index.getLong(FANOUT * 4 + _count * MetaStore.HASH_BYTES
+                + i * 8);
+    }
+    /** Returns the contents of the entry at OFFSET.
+     * @param offset offset
+     * @return byte[]
+     **/
+    private byte[] readEntry(long offset) throws IOException {
+        ByteBuffer head = slice(offset, HEADER);
+        int kind = head.get();
+        Codec codec = Codec.forId(head.get());
+        long base = head.getLong();
+        int length = head.getInt();
+        byte[] contents = decode(codec, slice(offset + HEADER, length));
+        if (kind == DELTA) {
+            return Delta.apply(readEntry(base), contents);
+        }
+        return contents;
+    }
+    /** Returns LENGTH bytes of the pack starting at OFFSET.
+     * @param offset offset
+     * @param length length
+     * @return ByteBuffer
+     **/
+    private ByteBuffer slice(long offset, int length) throws IOException {
+        if (_pack != null) {
+            return _pack.duplicate().position((int) offset)
+                    .limit((int) offset + length).slice();
+        }
+        return _channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+    /** Returns BYTES decoded with CODEC.
+     * @param codec codec
+     * @param bytes bytes
+     * @return byte[]
+     **/
+    private static byte[] decode(Codec codec, ByteBuffer bytes)
+            throws IOException {
+        InputStream raw = new InputStream() {
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+            }
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!bytes.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, bytes.remaining());
+                bytes.get(b, off, n);
+                return n;
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = codec.unwrap(raw)) {
+            in.transferTo(out);
+        }
+        return out.toByteArray();
+    }
+
+    /** Source of blob contents while a pack is being written. **/
+    interface Source {
+        /** Returns a stream of the contents of blob ID.
+         * @param id id
+         * @return InputStream
+         **/
+        InputStream open(String id) throws IOException;
+    }
+
+    /** Writes every blob in HISTORIES and EXTRA into a new pack in DIR,
+     *  replacing any pack already there with one rename once the new
+     *  one is on disk. Each list in HISTORIES is the versions of one
+     *  path, oldest first; each version is stored as a delta against
+     *  the one before when that is smaller.
+     * @param dir dir
+     * @param histories histories
+     * @param extra blobs that belong to no path
+     * @param source source
+     * @param codec codec
+     **/
+    static void write(File dir,
+                      Map<String, ? extends Collection<String>> histories,
+                      List<String> extra, Source source, Codec codec)
+            throws IOException {
+        File tmp = File.createTempFile("tmp-", null, dir);
+        TreeMap<String, Long> offsets = new TreeMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        try (Output out = new Output(tmp)) {
+            for (Collection<String> versions : histories.values()) {
+                String prevId = null;
+                byte[] prev = null;
+                for (String id : versions) {
+                    if (offsets.containsKey(id)) {
+                        prevId = id;
+                        prev = small(source, id);
+                        continue;
+                    }
+                    offsets.put(id, out.position());
+                    depths.put(id, 0);
+                    byte[] contents;
+                    try (InputStream in = source.open(id)) {
+                        contents = in.readNBytes(MAX_DELTA_SIZE + 1);
+                        if (contents.length > MAX_DELTA_SIZE) {
+                            out.entry(WHOLE, 0, new SequenceInputStream(
+                                    new ByteArrayInputStream(contents), in),
+                                    codec);
+                            prevId = null;
+                            prev = null;
+                            continue;
+                        }
+                    }
+                    byte[] delta = null;
+                    if (prev != null && depths.get(prevId) < MAX_DEPTH) {
+                        delta = Delta.create(prev, contents);
+                        if (delta.length >= contents.length) {
+                            delta = null;
+                        }
+                    }
+                    if (delta == null) {
+                        out.entry(WHOLE, 0, contents, codec);
+                    } else {
+                        out.entry(DELTA, offsets.get(prevId), delta, codec);
+                        depths.put(id, depths.get(prevId) + 1);
+                    }
+                    prevId = id;
+                    prev = contents;
+                }
+            }
+            for (String id : extra) {
+                if (!offsets.containsKey(id)) {
+                    offsets.put(id, out.position());
+                    try (InputStream in = source.open(id)) {
+                        out.entry(WHOLE, 0, in, codec);
+                    }
+                }
+            }
+            out.index(offsets);
+        }
+        Files.move(tmp.toPath(), Utils.join(dir, NAME).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+    /** Returns the contents of blob ID from SOURCE if it is small enough
+     *  to be diffed, or null.
+     * @param source source
+     * @param id id
+     * @return byte[]
+     **/
+    private static byte[] small(Source source, String id)
+            throws IOException {
+        try (InputStream in = source.open(id)) {
+            byte[] contents = in.readNBytes(MAX_DELTA_SIZE + 1);
+            return contents.length > MAX_DELTA_SIZE ? null : contents;
+        }
+    }
+
+    /** A new pack being written. **/
+    private static final class Output implements Closeable {
+        /** The file. **/
+        private final FileChannel _channel;
+        /** Buffered stream onto _channel. **/
+        private final DataOutputStream _out;
+        /** Bytes written so far. **/
+        private long _position;
+
+        /** A new pack written to FILE.
+         * @param file file
+         **/
+        Output(File file) throws IOException {
+            _channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            _out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(_channel),
+                    BlobStore.BUFFER_SIZE));
+        }
+        /** Returns the offset of the next entry. **/
+        long position() {
+            return _position;
+        }
+        /** Writes an entry of KIND with base BASE, holding CONTENTS
+         *  encoded with CODEC.
+         * @param kind kind
+         * @param base base
+         * @param contents contents
+         * @param codec codec
+         **/
+        void entry(int kind, long base, byte[] contents, Codec codec)
+                throws IOException {
+            entry(kind, base, new ByteArrayInputStream(contents), codec);
+        }
+        /** Writes an entry of KIND with base BASE, holding what IN holds
+         *  encoded with CODEC as it is read. The length is written once
+         *  it is known, over a placeholder.
+         * @param kind kind
+         * @param base base
+         * @param in in
+         * @param codec codec
+         **/
+        void entry(int kind, long base, InputStream in, Codec codec)
+                throws IOException {
+            long start = _position;
+            _out.writeByte(kind);
+            _out.writeByte(codec.id());
+            _out.writeLong(base);
+            _out.writeInt(0);
+            long[] length = {0};
+            OutputStream body = new FilterOutputStream(_out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    length[0] += 1;
+                }
+                @Override
+                public void write(byte[] b, int off, int len)
+                        throws IOException {
+                    out.write(b, off, len);
+                    length[0] += len;
+                }
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            try (OutputStream enc = codec.wrap(body)) {
+                in.transferTo(enc);
+            }
+            if (length[0] > Integer.MAX_VALUE) {
+                throw new IOException("blob too large to pack");
+            }
+            _out.flush();
+            _channel.write(ByteBuffer.allocate(4).putInt(0, (int) length[0]),
+                    start + HEADER - 4);
+            _position += HEADER + length[0];
+        }
+        /** Writes the index of the entries at OFFSETS, by id, and the
+         *  trailer.
+         * @param offsets offsets
+         **/
+        void index(TreeMap<String, Long> offsets) throws IOException {
+            long start = _position;
+            int[] fanout = new int[FANOUT];
+            for (String id : offsets.keySet()) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+            }
+            int total = 0;
+            for (int i = 0; i < FANOUT; i++) {
+                total += fanout[i];
+                _out.writeInt(total);
+            }
+            for (String id : offsets.keySet()) {
+                _out.write(MetaStore.fromHex(id));
+            }
+            for (long offset : offsets.values()) {
+                _out.writeLong(offset);
+            }
+            _out.writeLong(start);
+            _out.flush();
+            _channel.force(true);
+        }
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package gitlet;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/** An immutable map from paths to blob ids, kept as a hash array
+ *  mapped trie. Adding or removing a path copies only the nodes on the
+ *  way to it, so a snapshot made from its parent's shares every other
+ *  node with it, and each id is held as its 20 raw bytes rather than
+ *  as a 40-character string.
+ *  @author Adam
+ */
+final class PathMap extends AbstractMap<String, String> {
+    /** The map with no paths. **/
+    static final PathMap EMPTY = new PathMap(Node.EMPTY, 0);
+    /** Bits of the hash consumed by each level of the trie. **/
+    private static final int BITS = 5;
+    /** Mask selecting one level's bits. **/
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** Root of the trie. **/
+    private final Node _root;
+    /** Number of paths. **/
+    private final int _size;
+    /** View of the entries, made on first use. **/
+    private Set<Map.Entry<String, String>> _entries;
+
+    /** A map of SIZE paths held under ROOT.
+     * @param root root
+     * @param size size
+     **/
+    private PathMap(Node root, int size) {
+        _root = root;
+        _size = size;
+    }
+    /** Returns a map holding every entry of FILES.
+     * @param files files
+     * @return PathMap
+     **/
+    static PathMap of(Map<String, String> files) {
+        return EMPTY.apply(files);
+    }
+    /** Returns this map with PATH mapped to blob ID.
+     * @param path path
+     * @param id id
+     * @return PathMap
+     **/
+    PathMap with(String path, String id) {
+        Leaf leaf = new Leaf(path, MetaStore.fromHex(id));
+        Leaf old = _root.find(path, leaf._hash, 0);
+        return new PathMap(_root.put(leaf, 0),
+                old == null ? _size + 1 : _size);
+    }
+    /** Returns this map without PATH.
+     * @param path path
+     * @return PathMap
+     **/
+    PathMap without(String path) {
+        int hash = path.hashCode();
+        if (_root.find(path, hash, 0) == null) {
+            return this;
+        }
+        return new PathMap(_root.remove(path, hash, 0), _size - 1);
+    }
+    /** Returns this map with CHANGES applied: each path is mapped to its
+     *  new blob id, or removed if that is null.
+     * @param changes changes
+     * @return PathMap
+     **/
+    PathMap apply(Map<String, String> changes) {
+        PathMap result = this;
+        for (Map.Entry<String, String> c : changes.entrySet()) {
+            if (c.getValue() == null) {
+                result = result.without(c.getKey());
+            } else {
+                result = result.with(c.getKey(), c.getValue());
+            }
+        }
+        return result;
+    }
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Leaf leaf = _root.find((String) key, key.hashCode(), 0);
+        return leaf == null ? null : MetaStore.toHex(leaf._id);
+    }
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String
+                && _root.find((String) key, key.hashCode(), 0) != null;
+    }
+    @Override
+    public int size() {
+        return _size;
+    }
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        if (_entries == null) {
+            _entries = new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new Leaves(_root);
+                }
+                @Override
+                public int size() {
+                    return _size;
+                }
+            };
+        }
+        return _entries;
+    }
+
+    /** One path and the raw id of its blob. **/
+    private static final class Leaf {
+        /** The path. **/
+        private final String _path;
+        /** Hash of _path. **/
+        private final int _hash;
+        /** Raw id of the blob. **/
+        private final byte[] _id;
+
+        /** A leaf mapping PATH to the blob with raw id ID.
+         * @param path path
+         * @param id id
+         **/
+        Leaf(String path, byte[] id) {
+            _path = path;
+            _hash = path.hashCode();
+            _id = id;
+        }
+        /** Returns true if this leaf is for PATH, whose hash is HASH.
+         * @param path path
+         * @param hash hash
+         * @return boolean
+         **/
+        boolean is(String path, int hash) {
+            return _hash == hash && _path.equals(path);
+        }
+    }
+
+    /** A node of the trie. Below the last level every hash bit has been
+     *  used, so a node there is a plain list of leaves whose paths
+     *  share a hash; above it, _bitmap marks which of the 32 branches
+     *  are present and each slot is a Leaf or a child Node. **/
+    private static final class Node {
+        /** The node with no slots. **/
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        /** Present branches, one bit each. **/
+        private final int _bitmap;
+        /** Leaves and children of the present branches, in bit order. **/
+        private final Object[] _slots;
+
+        /** A node with branches BITMAP holding SLOTS.
+         * @param bitmap bitmap
+         * @param slots slots
+         **/
+        Node(int bitmap, Object[] slots) {
+            _bitmap = bitmap;
+            _slots = slots;
+        }
+        /** Returns the leaf for PATH, whose hash is HASH, below this node
+         *  at depth SHIFT, or null.
+         * @param path path
+         * @param hash hash
+         * @param shift shift
+         * @return Leaf
+         **/
+        Leaf find(String path, int hash, int shift) {
+            if (shift >= Integer.SIZE) {
+                for (Object o : _slots) {
+                    if (((Leaf) o).is(path, hash)) {
+                        return (Leaf) o;
+                    }
+                }
+                return null;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((_bitmap & bit) == 0) {
+                return null;
+            }
+            Object o = _slots[index(bit)];
+            if (o instanceof Leaf) {
+                return ((Leaf) o).is(path, hash) ? (Leaf) o : null;
+            }
+            return ((Node) o).find(path, hash, shift + BITS);
+        }
+        /** Returns a copy of this node at depth SHIFT holding LEAF.
+         * @param leaf leaf
+         * @param shift shift
+         * @return Node
+         **/
+        Node put(Leaf leaf, int shift) {
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < _slots.length; i++) {
+                    if (((Leaf) _slots[i]).is(leaf._path, leaf._hash)) {
+                        return new Node(0, replaced(i, leaf));
+                    }
+                }
+                return new Node(0, inserted(_slots.length, leaf));
+            }
+            int bit = 1 << ((leaf._hash >>> shift) & MASK);
+            int i = index(bit);
+            if ((_bitmap & bit) == 0) {
+                return new Node(_bitmap | bit, inserted(i, leaf));
+            }
+            Object o = _slots[i];
+            if (o instanceof Node) {
+                return new Node(_bitmap,
+                        replaced(i, ((Node) o).put(leaf, shift + BITS)));
+            }
+            Leaf old = (Leaf) o;
+            if (old.is(leaf._path, leaf._hash)) {
+                return new Node(_bitmap, replaced(i, leaf));
+            }
+            Node child = EMPTY.put(old, shift + BITS)
+                    .put(leaf, shift + BITS);
+            return new Node(_bitmap, replaced(i, child));
+        }
+        /** Returns a copy of this node at depth SHIFT without PATH, whose
+         *  hash is HASH and which must be present.
+         * @param path path
+         * @param hash hash
+         * @param shift shift
+         * @return Node
+         **/
+        Node remove(String path, int hash, int shift) {
+            if (shift >= Integer.SIZE) {
+                for (int i = 0; i < _slots.length; i++) {
+                    if (((Leaf) _slots[i]).is(path, hash)) {
+                        return new Node(0, removed(i));
+                    }
+                }
+                return this;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            Object o = _slots[i];
+            if (o instanceof Leaf) {
+                return new Node(_bitmap & ~bit, removed(i));
+            }
+            Node child = ((Node) o).remove(path, hash, shift + BITS);
+            if (child._slots.length == 0) {
+                return new Node(_bitmap & ~bit, removed(i));
+            }
+            if (child._slots.length == 1 && child._slots[0] instanceof Leaf) {
+                return new Node(_bitmap, replaced(i, child._slots[0]));
+            }
+            return new Node(_bitmap, replaced(i, child));
+        }
+        /** Returns the slot index of branch BIT.
+         * @param bit bit
+         * @return int
+         **/
+        private int index(int bit) {
+            return Integer.bitCount(_bitmap & (bit - 1));
+        }
+        /** Returns a copy of the slots with slot I set to O.
+         * @param i i
+         * @param o o
+         * @return Object[]
+         **/
+        private Object[] replaced(int i, Object o) {
+            Object[] slots = _slots.clone();
+            slots[i] = o;
+            return slots;
+        }
+        /** Returns a copy of the slots with O inserted at I.
+         * @param i i
+         * @param o o
+         * @return Object[]
+         **/
+        private Object[] inserted(int i, Object o) {
+            Object[] slots = new Object[_slots.length + 1];
+            System.arraycopy(_slots, 0, slots, 0, i);
+            slots[i] = o;
+            System.arraycopy(_slots, i, slots, i + 1, _slots.length - i);
+            return slots;
+        }
+        /** Returns a copy of the slots without slot I.
+         * @param i i
+         * @return Object[]
+         **/
+        private Object[] removed(int i) {
+            Object[] slots = new Object[_slots.length - 1];
+            System.arraycopy(_slots, 0, slots, 0, i);
+            System.arraycopy(_slots, i + 1, slots, i, slots.length - i);
+            return slots;
+        }
+    }
+
+    /** Walks the leaves of a trie depth first. **/
+    private static final class Leaves
+            implements Iterator<Map.Entry<String, String>> {
+        /** Nodes being walked, innermost last. **/
+        private final ArrayDeque<Node> _nodes = new ArrayDeque<>();
+        /** Next slot to visit in each node of _nodes. **/
+        private final ArrayDeque<Integer> _next = new ArrayDeque<>();
+        /** The leaf to return next, or null at the end. **/
+        private Leaf _leaf;
+
+        /** Walks the trie under ROOT.
+         * @param root root
+         **/
+        Leaves(Node root) {
+            _nodes.push(root);
+            _next.push(0);
+            advance();
+        }
+        @Override
+        public boolean hasNext() {
+            return _leaf != null;
+        }
+        @Override
+        public Map.Entry<String, String> next() {
+            if (_leaf == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf leaf = _leaf;
+            advance();
+            return new AbstractMap.SimpleImmutableEntry<>(leaf._path,
+                    MetaStore.toHex(leaf._id));
+        }
+        /** Moves _leaf to the next leaf. **/
+        private void advance() {
+            _leaf = null;
+            while (!_nodes.isEmpty()) {
+                Node node = _nodes.peek();
+                int i = _next.pop();
+                if (i == node._slots.length) {
+                    _nodes.pop();
+                    continue;
+                }
+                _next.push(i + 1);
+                Object o = node._slots[i];
+                if (o instanceof Leaf) {
+                    _leaf = (Leaf) o;
+                    return;
+                }
+                _nodes.push((Node) o);
+                _next.push(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A set of paths named by patterns, each relative to the root of the
+ *  working tree. A pattern holding any of the glob characters is
+ *  matched as a glob by the platform PathMatcher, so '*' stays within
+ *  a directory and '**' crosses them; any other pattern names a path
+ *  and everything below it, and "" names the whole tree.
+ *  @author Adam
+ */
+final class PathSpec {
+    /** The patterns, as given. **/
+    private final List<String> _patterns;
+    /** Matchers for the glob patterns. **/
+    private final ArrayList<PathMatcher> _globs = new ArrayList<>();
+    /** The other patterns. **/
+    private final ArrayList<String> _paths = new ArrayList<>();
+
+    /** The paths PATTERNS name.
+     * @param patterns patterns
+     **/
+    PathSpec(List<String> patterns) {
+        _patterns = List.copyOf(patterns);
+        for (String p : patterns) {
+            if (isGlob(p)) {
+                _globs.add(FileSystems.getDefault()
+                        .getPathMatcher("glob:" + p));
+            } else {
+                _paths.add(p);
+            }
+        }
+    }
+    /** Returns the patterns. **/
+    List<String> patterns() {
+        return _patterns;
+    }
+    /** Returns true if PATH is in the set.
+     * @param path path
+     * @return boolean
+     **/
+    boolean matches(String path) {
+        for (String p : _paths) {
+            if (p.isEmpty() || path.equals(p) || (path.startsWith(p)
+                    && path.charAt(p.length()) == '/')) {
+                return true;
+            }
+        }
+        for (PathMatcher glob : _globs) {
+            if (glob.matches(Paths.get(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /** Returns true if PATTERN is a glob.
+     * @param pattern pattern
+     * @return boolean
+     **/
+    static boolean isGlob(String pattern) {
+        return pattern.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+    }
+}
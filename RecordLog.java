@@ -0,0 +1,462 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/** An append-only file of immutable records keyed by id, with a table
+ *  of fixed-width (id, offset) entries beside it so one record can be
+ *  read without scanning the rest.
+ *
+ *  For looking ids up by prefix there is also a sorted index, laid out
+ *  like a pack index: a fan-out table of cumulative counts by first id
+ *  byte, then the ids in order. It covers the records the table had
+ *  when it was written; the few appended since are scanned, and it is
+ *  rewritten once there are more than MAX_TAIL of them.
+ *
+ *  Other processes may append to the same log, each under the log's
+ *  lock; an id not found is looked for again among the entries
+ *  appended since the table was read.
+ *
+ *  The table is held as an IdTable and an array of offsets, and the
+ *  records are read from a memory map of the whole log, so finding
+ *  and reading records makes no objects but what is returned, and
+ *  none at all for a view such as CommitView, which reads a record in
+ *  place. A log too large to map at once is read from the file.
+ *  @author Adam
+ */
+final class RecordLog {
+    /** Length in bytes of one entry in the index. **/
+    private static final int INDEX_ENTRY = MetaStore.HASH_BYTES + 8;
+    /** Entries in the fan-out table of the sorted index. **/
+    private static final int FANOUT = 256;
+    /** Records past the sorted index allowed before it is rewritten. **/
+    private static final int MAX_TAIL = 128;
+
+    /** The records, each preceded by its length. **/
+    private final File _data;
+    /** Append-only table of ids and their offsets in _data. **/
+    private final File _index;
+    /** Sorted index of ids, written on first prefix lookup. **/
+    private final File _sorted;
+    /** Journal the appends are noted in. **/
+    private final Journal _journal;
+    /** Locks of the command using the log. **/
+    private final Locks _locks;
+    /** Ids in the index, read on first use. **/
+    private IdTable _ids;
+    /** Offset in _data of the record of each id, by its number. **/
+    private long[] _offsets = new long[16];
+    /** Length of the part of _index read into _ids. **/
+    private long _indexed;
+    /** The records, mapped, or null if not mapped yet or too large. **/
+    private MappedByteBuffer _map;
+    /** Number of records _map covers. **/
+    private int _mapped;
+
+    /** A log kept in DATA, indexed by INDEX, with its ids sorted in
+     *  SORTED, whose appends are made durable by JOURNAL and made under
+     *  LOCKS.
+     * @param data data
+     * @param index index
+     * @param sorted sorted
+     * @param journal journal
+     * @param locks locks
+     **/
+    RecordLog(File data, File index, File sorted, Journal journal,
+              Locks locks) {
+        _data = data;
+        _index = index;
+        _sorted = sorted;
+        _journal = journal;
+        _locks = locks;
+    }
+    /** Cuts off what a crash left of the last appends: a partial index
+     *  entry, entries whose record did not reach the data file whole,
+     *  and data past the last indexed record. No ref can name a record
+     *  cut off, as refs are only updated once the log is synced. A log
+     *  another process is appending to is left alone. **/
+    void recover() throws IOException {
+        if (!_index.exists() || !_data.exists() || !_locks.tryLock(_data)) {
+            return;
+        }
+        try (RandomAccessFile index = new RandomAccessFile(_index, "rw");
+             RandomAccessFile data = new RandomAccessFile(_data, "rw")) {
+            long entries = index.length() / INDEX_ENTRY;
+            long end = 0;
+            while (entries > 0) {
+                index.seek(entries * INDEX_ENTRY - 8);
+                long offset = index.readLong();
+                if (offset + 4 <= data.length()) {
+                    data.seek(offset);
+                    end = offset + 4 + data.readInt();
+                    if (end <= data.length()) {
+                        break;
+                    }
+                }
+                entries -= 1;
+                end = 0;
+            }
+            if (index.length() != entries * INDEX_ENTRY) {
+                index.setLength(entries * INDEX_ENTRY);
+            }
+            if (data.length() != end) {
+                data.setLength(end);
+            }
+        } finally {
+            _locks.unlock(_data);
+        }
+    }
+    /** Returns true if there is a record with id ID.
+     * @param id id
+     * @return boolean
+     **/
+    boolean contains(String id) throws IOException {
+        return entry(id) >= 0;
+    }
+    /** Returns every id, in the order the records were written. **/
+    Iterable<String> ids() throws IOException {
+        IdTable ids = table();
+        int size = ids.size();
+        return () -> new Iterator<String>() {
+            private int _next;
+
+            @Override
+            public boolean hasNext() {
+                return _next < size;
+            }
+            @Override
+            public String next() {
+                return ids.id(_next++);
+            }
+        };
+    }
+    /** Returns the ids starting with PREFIX, a lower-case hex string
+     *  of at least two characters, stopping at the second, so that more
+     *  than one means PREFIX is ambiguous.
+     * @param prefix prefix
+     * @return List
+     **/
+    List<String> resolve(String prefix) throws IOException {
+        ArrayList<String> matches = new ArrayList<>();
+        int covered = searchSorted(prefix, matches);
+        long entries = _index.exists() ? _index.length() / INDEX_ENTRY : 0;
+        if (entries - covered > MAX_TAIL) {
+            writeSorted();
+            matches.clear();
+            covered = searchSorted(prefix, matches);
+        }
+        if (entries == covered || matches.size() > 1) {
+            return matches;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_index)))) {
+            in.skipNBytes((long) covered * INDEX_ENTRY);
+            for (long i = covered; i < entries && matches.size() < 2; i++) {
+                String id = MetaStore.readHash(in);
+                in.readLong();
+                if (id.startsWith(prefix)) {
+                    matches.add(id);
+                }
+            }
+        }
+        return matches;
+    }
+    /** Adds the ids in the sorted index that start with PREFIX to
+     *  MATCHES, up to two, and returns how many records the sorted index
+     *  covers.
+     * @param prefix prefix
+     * @param matches matches
+     * @return int
+     **/
+    private int searchSorted(String prefix, List<String> matches)
+            throws IOException {
+        if (!_sorted.exists()) {
+            return 0;
+        }
+        MappedByteBuffer sorted;
+        try (FileChannel channel = FileChannel.open(_sorted.toPath(),
+                StandardOpenOption.READ)) {
+            sorted = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        int first = Integer.parseInt(prefix.substring(0, 2), 16);
+        int lo = first == 0 ? 0 : sorted.getInt((first - 1) * 4);
+        int hi = sorted.getInt(first * 4);
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < 2 * MetaStore.HASH_BYTES) {
+            padded.append('0');
+        }
+        byte[] key = MetaStore.fromHex(padded.toString());
+        byte[] probe = new byte[MetaStore.HASH_BYTES];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            sorted.get(FANOUT * 4 + mid * MetaStore.HASH_BYTES, probe);
+            if (Arrays.compareUnsigned(probe, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int end = sorted.getInt(first * 4);
+        for (int i = lo; i < end && matches.size() < 2; i++) {
+            sorted.get(FANOUT * 4 + i * MetaStore.HASH_BYTES, probe);
+            String id = MetaStore.toHex(probe);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            matches.add(id);
+        }
+        return sorted.getInt((FANOUT - 1) * 4);
+    }
+    /** Rewrites the sorted index to cover every record. **/
+    private void writeSorted() throws IOException {
+        ArrayList<String> ids = new ArrayList<>();
+        for (String id : ids()) {
+            ids.add(id);
+        }
+        ids.sort(null);
+        File tmp = File.createTempFile("tmp-", null, _sorted.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            int[] fanout = new int[FANOUT];
+            for (String id : ids) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+            }
+            int total = 0;
+            for (int i = 0; i < FANOUT; i++) {
+                total += fanout[i];
+                out.writeInt(total);
+            }
+            for (String id : ids) {
+                out.write(MetaStore.fromHex(id));
+            }
+        }
+        Files.move(tmp.toPath(), _sorted.toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+    /** Returns the record with id ID, or null if there is none.
+     * @param id id
+     * @return byte[]
+     **/
+    byte[] read(String id) throws IOException {
+        int entry = id == null ? -1 : entry(id);
+        if (entry < 0) {
+            return null;
+        }
+        ByteBuffer map = map(entry);
+        if (map != null) {
+            int offset = (int) _offsets[entry];
+            byte[] record = new byte[map.getInt(offset)];
+            map.get(offset + 4, record);
+            return record;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(_data, "r")) {
+            log.seek(_offsets[entry]);
+            byte[] record = new byte[log.readInt()];
+            log.readFully(record);
+            return record;
+        }
+    }
+    /** Returns the number of record ID in the order the records were
+     *  written, or -1 if there is none.
+     * @param id id
+     * @return int
+     **/
+    int entry(String id) throws IOException {
+        int entry = table().find(id);
+        if (entry < 0 && stale()) {
+            readIndex();
+            entry = _ids.find(id);
+        }
+        return entry;
+    }
+    /** Returns the number of the record whose id is held in SRC at POS,
+     *  or -1 if there is none.
+     * @param src src
+     * @param pos pos
+     * @return int
+     **/
+    int entry(ByteBuffer src, int pos) throws IOException {
+        int entry = table().find(src, pos);
+        if (entry < 0 && stale()) {
+            readIndex();
+            entry = _ids.find(src, pos);
+        }
+        return entry;
+    }
+    /** Returns the number of the record whose id is id INDEX of IDS,
+     *  or -1 if there is none.
+     * @param ids ids
+     * @param index index
+     * @return int
+     **/
+    int entry(IdTable ids, int index) throws IOException {
+        int entry = table().find(ids, index);
+        if (entry < 0 && stale()) {
+            readIndex();
+            entry = _ids.find(ids, index);
+        }
+        return entry;
+    }
+    /** Returns the id of record ENTRY.
+     * @param entry entry
+     * @return String
+     **/
+    String id(int entry) throws IOException {
+        return table().id(entry);
+    }
+    /** Returns the number of records. **/
+    int size() throws IOException {
+        return table().size();
+    }
+    /** Returns the offset in the log of record ENTRY; the record
+     *  starts with its length.
+     * @param entry entry
+     * @return long
+     **/
+    long offset(int entry) {
+        return _offsets[entry];
+    }
+    /** Returns the whole log mapped read-only, covering at least record
+     *  ENTRY, or null if it is too large to map. The buffer is shared,
+     *  so it must only be read at absolute positions.
+     * @param entry entry
+     * @return ByteBuffer
+     **/
+    ByteBuffer map(int entry) throws IOException {
+        if (entry >= _mapped) {
+            long size = _data.length();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(_data.toPath(),
+                    StandardOpenOption.READ)) {
+                _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        size);
+            }
+            _mapped = _ids.size();
+        }
+        return _map;
+    }
+    /** Reads record ENTRY into SCRATCH, or into a new buffer if SCRATCH
+     *  is null or too small, and returns the buffer it was read into,
+     *  holding the record from position 0; for a log too large to map.
+     * @param entry entry
+     * @param scratch scratch
+     * @return ByteBuffer
+     **/
+    ByteBuffer read(int entry, ByteBuffer scratch) throws IOException {
+        try (FileChannel log = FileChannel.open(_data.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            log.read(length, _offsets[entry]);
+            int size = length.getInt(0);
+            ByteBuffer into = scratch != null && scratch.capacity() >= size
+                    ? scratch : ByteBuffer.allocate(size);
+            into.clear().limit(size);
+            while (into.hasRemaining()) {
+                if (log.read(into, _offsets[entry] + 4 + into.position())
+                        < 0) {
+                    throw new EOFException();
+                }
+            }
+            return into;
+        }
+    }
+    /** Appends RECORD under ID unless a record with ID is already here.
+     * @param id id
+     * @param record record
+     **/
+    void append(String id, byte[] record) throws IOException {
+        if (contains(id)) {
+            return;
+        }
+        _locks.lock(_data);
+        try {
+            if (contains(id)) {
+                return;
+            }
+            long offset = _data.length();
+            try (DataOutputStream out = new DataOutputStream(
+                    new FileOutputStream(_data, true))) {
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new FileOutputStream(_index, true))) {
+                out.write(MetaStore.fromHex(id));
+                out.writeLong(offset);
+            }
+            _journal.written(_data);
+            _journal.written(_index);
+            put(_ids.add(id), offset);
+            _indexed += INDEX_ENTRY;
+        } finally {
+            _locks.unlock(_data);
+        }
+    }
+    /** Reads the entries other processes have appended since the
+     *  index was read. **/
+    void refresh() throws IOException {
+        if (_ids != null && stale()) {
+            readIndex();
+        }
+    }
+    /** Returns true if the index has entries that were not read. **/
+    private boolean stale() {
+        return _index.length() >= _indexed + INDEX_ENTRY;
+    }
+    /** Returns the ids, reading the index on first use. **/
+    private IdTable table() throws IOException {
+        if (_ids == null) {
+            _ids = new IdTable();
+            readIndex();
+        }
+        return _ids;
+    }
+    /** Records that the record numbered ENTRY is at OFFSET.
+     * @param entry entry
+     * @param offset offset
+     **/
+    private void put(int entry, long offset) {
+        if (entry == _offsets.length) {
+            _offsets = Arrays.copyOf(_offsets, 2 * entry);
+        }
+        _offsets[entry] = offset;
+    }
+    /** Reads the entries of the index past those already read. **/
+    private void readIndex() throws IOException {
+        if (!_index.exists()) {
+            return;
+        }
+        try (RandomAccessFile index = new RandomAccessFile(_index, "r")) {
+            long entries = (index.length() - _indexed) / INDEX_ENTRY;
+            byte[] table = new byte[(int) (entries * INDEX_ENTRY)];
+            index.seek(_indexed);
+            index.readFully(table);
+            ByteBuffer in = ByteBuffer.wrap(table);
+            for (int i = 0; i < table.length; i += INDEX_ENTRY) {
+                put(_ids.add(in, i), in.getLong(i + MetaStore.HASH_BYTES));
+            }
+            _indexed += table.length;
+        }
+    }
+}
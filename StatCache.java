@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/** The size, modification and change times and inode each tracked
+ *  working file had when it was last hashed, with the id it hashed to.
+ *  A file whose stat still matches is known to hold that blob without
+ *  being read.
+ *
+ *  As in git's index, an entry whose file was modified no earlier
+ *  than the index itself was written is "racy": the file could have
+ *  changed again within the same timestamp tick, so it is rehashed.
+ *  Lookups and updates are safe from several threads at once.
+ *  @author Adam
+ */
+final class StatCache {
+    /** Cached entries by path. **/
+    private final ConcurrentHashMap<String, Entry> _entries =
+            new ConcurrentHashMap<>();
+    /** Modification time of the index these entries were read from, in
+     *  nanoseconds, or Long.MIN_VALUE if they were not read from one. **/
+    private long _indexTime = Long.MIN_VALUE;
+    /** True if the entries changed since they were read. **/
+    private volatile boolean _dirty;
+
+    /** Returns the id of the blob FILE holds, hashing it only if its
+     *  stat differs from the cached entry for PATH.
+     * @param path path
+     * @param file file
+     * @return String
+     **/
+    String hash(String path, File file) throws IOException {
+        String id = cached(path, file);
+        if (id == null) {
+            id = refresh(path, file, () -> BlobStore.hash(file));
+        }
+        return id;
+    }
+    /** Returns the id of the blob FILE holds if its stat shows it has
+     *  not changed since PATH was cached, or null if it must be read.
+     * @param path path
+     * @param file file
+     * @return String
+     **/
+    String cached(String path, File file) throws IOException {
+        Entry cached = _entries.get(path);
+        if (cached != null && cached._mtime < _indexTime
+                && cached.sameStat(Entry.of(file, null))) {
+            return cached._id;
+        }
+        return null;
+    }
+    /** Runs READER, which reads FILE and returns the id of what it
+     *  read, and caches that id under the stat FILE had beforehand.
+     * @param path path
+     * @param file file
+     * @param reader reader
+     * @return String
+     **/
+    String refresh(String path, File file, Reader reader)
+            throws IOException {
+        Entry before = Entry.of(file, null);
+        String id = reader.read();
+        put(path, before.withId(id));
+        return id;
+    }
+    /** Records that FILE, tracked as PATH, now holds blob ID.
+     * @param path path
+     * @param file file
+     * @param id id
+     **/
+    void record(String path, File file, String id) throws IOException {
+        put(path, Entry.of(file, id));
+    }
+    /** Drops the entries for which KEEP is false.
+     * @param keep keep
+     **/
+    void retain(Predicate<String> keep) {
+        Iterator<String> paths = _entries.keySet().iterator();
+        while (paths.hasNext()) {
+            if (!keep.test(paths.next())) {
+                paths.remove();
+                _dirty = true;
+            }
+        }
+    }
+    /** Returns true if the entries changed since they were read. **/
+    boolean isDirty() {
+        return _dirty;
+    }
+    /** Reads the entries from IN; the index was written at INDEXTIME.
+     * @param in in
+     * @param indexTime indexTime
+     **/
+    void read(DataInputStream in, long indexTime) throws IOException {
+        _indexTime = indexTime;
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            String path = MetaStore.readString(in);
+            long length = in.readLong();
+            long mtime = in.readLong();
+            long ctime = in.readLong();
+            long inode = in.readLong();
+            _entries.put(path, new Entry(length, mtime, ctime, inode,
+                    MetaStore.readHash(in)));
+        }
+    }
+    /** Writes the entries to OUT.
+     * @param out out
+     **/
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(_entries.size());
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            MetaStore.writeString(out, e.getKey());
+            out.writeLong(e.getValue()._size);
+            out.writeLong(e.getValue()._mtime);
+            out.writeLong(e.getValue()._ctime);
+            out.writeLong(e.getValue()._inode);
+            out.write(MetaStore.fromHex(e.getValue()._id));
+        }
+        _dirty = false;
+    }
+    /** Caches ENTRY for PATH.
+     * @param path path
+     * @param entry entry
+     **/
+    private void put(String path, Entry entry) {
+        _entries.put(path, entry);
+        _dirty = true;
+    }
+
+    /** Reads a file and returns the id of its contents. **/
+    interface Reader {
+        /** Returns the id of what was read. **/
+        String read() throws IOException;
+    }
+
+    /** What a file looked like when it was hashed. **/
+    private static final class Entry {
+        /** Size in bytes. **/
+        private final long _size;
+        /** Modification time in nanoseconds. **/
+        private final long _mtime;
+        /** Status change time in nanoseconds, or 0 where there is none,
+         *  so that a rewrite that restores the old mtime is caught. **/
+        private final long _ctime;
+        /** Inode number, or 0 where the filesystem has none. **/
+        private final long _inode;
+        /** Id of the blob the file held. **/
+        private final String _id;
+
+        /** An entry for a file of SIZE bytes modified at MTIME.
+         * @param size size
+         * @param mtime mtime
+         * @param ctime ctime
+         * @param inode inode
+         * @param id id
+         **/
+        Entry(long size, long mtime, long ctime, long inode, String id) {
+            _size = size;
+            _mtime = mtime;
+            _ctime = ctime;
+            _inode = inode;
+            _id = id;
+        }
+        /** Returns the stat of FILE, which holds blob ID.
+         * @param file file
+         * @param id id
+         * @return Entry
+         **/
+        static Entry of(File file, String id) throws IOException {
+            Path path = file.toPath();
+            try {
+                Map<String, Object> attrs = Files.readAttributes(path,
+                        "unix:size,lastModifiedTime,ctime,ino");
+                return new Entry((Long) attrs.get("size"),
+                        ((FileTime) attrs.get("lastModifiedTime"))
+                                .to(TimeUnit.NANOSECONDS),
+                        ((FileTime) attrs.get("ctime"))
+                                .to(TimeUnit.NANOSECONDS),
+                        (Long) attrs.get("ino"), id);
+            } catch (UnsupportedOperationException excp) {
+                BasicFileAttributes attrs =
+                        Files.readAttributes(path, BasicFileAttributes.class);
+                Object key = attrs.fileKey();
+                return new Entry(attrs.size(),
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                        0, key == null ? 0 : key.hashCode(), id);
+            }
+        }
+        /** Returns this stat recorded as holding blob ID.
+         * @param id id
+         * @return Entry
+         **/
+        Entry withId(String id) {
+            return new Entry(_size, _mtime, _ctime, _inode, id);
+        }
+        /** Returns true if OTHER has the same size, times and inode.
+         * @param other other
+         * @return boolean
+         **/
+        boolean sameStat(Entry other) {
+            return _size == other._size && _mtime == other._mtime
+                    && _ctime == other._ctime && _inode == other._inode;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+/** An immutable directory snapshot: each name in the directory mapped
+ *  to the blob or subtree it holds. A tree's id is the hash of its
+ *  entries, so a directory that did not change between two commits is
+ *  the same tree in both and is stored once.
+ *  @author Adam
+ */
+final class Tree {
+    /** The tree with no entries. **/
+    static final Tree EMPTY = new Tree(new TreeMap<>());
+
+    /** Id of this tree. **/
+    private final String _sha1;
+    /** Entries by name. **/
+    private final SortedMap<String, Entry> _entries;
+
+    /** A tree holding ENTRIES.
+     * @param entries entries
+     **/
+    Tree(TreeMap<String, Entry> entries) {
+        _entries = Collections.unmodifiableSortedMap(entries);
+        _sha1 = Utils.sha1(encodeBody());
+    }
+    /** Rebuilds a tree that was already written.
+     * @param sha1 sha1
+     * @param entries entries
+     **/
+    private Tree(String sha1, TreeMap<String, Entry> entries) {
+        _sha1 = sha1;
+        _entries = Collections.unmodifiableSortedMap(entries);
+    }
+    /** Returns the id. **/
+    String getSha1() {
+        return _sha1;
+    }
+    /** Returns the entries by name. **/
+    SortedMap<String, Entry> entries() {
+        return _entries;
+    }
+
+    /** Returns the encoded record: the id followed by the body. **/
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.writeBytes(MetaStore.fromHex(_sha1));
+        bytes.writeBytes(encodeBody());
+        return bytes.toByteArray();
+    }
+    /** Returns the body of the record, which is what the id hashes. **/
+    private byte[] encodeBody() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                out.writeBoolean(e.getValue().isTree());
+                MetaStore.writeString(out, e.getKey());
+                out.write(MetaStore.fromHex(e.getValue().id()));
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+    /** Reads a record written by encode.
+     * @param record record
+     * @return Tree
+     **/
+    static Tree decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(record));
+        String sha1 = MetaStore.readHash(in);
+        int size = in.readInt();
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            boolean isTree = in.readBoolean();
+            String name = MetaStore.readString(in);
+            entries.put(name, new Entry(isTree, MetaStore.readHash(in)));
+        }
+        return new Tree(sha1, entries);
+    }
+
+    /** Adds every file under tree ID to FILES, keyed by its path with
+     *  PREFIX in front.
+     * @param store store
+     * @param id id
+     * @param prefix prefix
+     * @param files files
+     **/
+    static void flatten(MetaStore store, String id, String prefix,
+                        Map<String, String> files) throws IOException {
+        walk(store, id, prefix, files::put, null);
+    }
+    /** Passes every file under tree ID to VISITOR as (path, blob id).
+     *  A subtree already in SEEN at the same path is skipped, and every
+     *  subtree visited is added; SEEN may be null.
+     * @param store store
+     * @param id id
+     * @param prefix prefix
+     * @param visitor visitor
+     * @param seen seen
+     **/
+    static void walk(MetaStore store, String id, String prefix,
+                     BiConsumer<String, String> visitor,
+                     Set<String> seen) throws IOException {
+        if (seen != null && !seen.add(prefix + "\0" + id)) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e
+                : store.readTree(id).entries().entrySet()) {
+            String path = prefix + e.getKey();
+            if (e.getValue().isTree()) {
+                walk(store, e.getValue().id(), path + "/", visitor, seen);
+            } else {
+                visitor.accept(path, e.getValue().id());
+            }
+        }
+    }
+    /** Passes every path whose blob differs between trees OLD and NOW
+     *  to VISITOR as (path, old blob id, new blob id), with null for a
+     *  side that has no file there. A subtree with the same id on both
+     *  sides is skipped unread, so the work goes with the number of
+     *  changed paths, not the size of the trees. A path that stops
+     *  being a file is passed before anything below it is added, and
+     *  everything below a path is removed before it becomes a file.
+     *  Either tree may be null for an empty one.
+     * @param store store
+     * @param old old
+     * @param now now
+     * @param prefix prefix
+     * @param visitor visitor
+     **/
+    static void diff(MetaStore store, String old, String now, String prefix,
+                     DiffVisitor visitor) throws IOException {
+        if (Objects.equals(old, now)) {
+            return;
+        }
+        SortedMap<String, Entry> a = old == null ? EMPTY.entries()
+                : store.readTree(old).entries();
+        SortedMap<String, Entry> b = now == null ? EMPTY.entries()
+                : store.readTree(now).entries();
+        TreeSet<String> names = new TreeSet<>(a.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            Entry x = a.get(name);
+            Entry y = b.get(name);
+            String path = prefix + name;
+            String xBlob = x != null && !x.isTree() ? x.id() : null;
+            String yBlob = y != null && !y.isTree() ? y.id() : null;
+            String xTree = x != null && x.isTree() ? x.id() : null;
+            String yTree = y != null && y.isTree() ? y.id() : null;
+            if (xBlob != null && yBlob == null) {
+                visitor.visit(path, xBlob, null);
+            }
+            diff(store, xTree, yTree, path + "/", visitor);
+            if (yBlob != null && !yBlob.equals(xBlob)) {
+                visitor.visit(path, xBlob, yBlob);
+            }
+        }
+    }
+    /** Writes the trees for tree ID with CHANGES applied and returns the
+     *  id of the new root. CHANGES maps paths to their new blob ids, or
+     *  to null for paths to remove. Only the trees on the way to a
+     *  changed path are rewritten; every other subtree is shared.
+     * @param store store
+     * @param id id
+     * @param changes changes
+     * @return String
+     **/
+    static String apply(MetaStore store, String id,
+                        Map<String, String> changes) throws IOException {
+        Tree result = applyTo(store, id, "", changes);
+        if (result == null) {
+            result = EMPTY;
+        }
+        store.appendTree(result);
+        return result.getSha1();
+    }
+    /** Returns the entry at PATH under tree ID, or null if there is
+     *  none.
+     * @param store store
+     * @param id id
+     * @param path path
+     * @return Entry
+     **/
+    static Entry find(MetaStore store, String id, String path)
+            throws IOException {
+        Entry entry = null;
+        for (String name : path.split("/")) {
+            if (entry != null && !entry.isTree()) {
+                return null;
+            }
+            entry = store.readTree(entry == null ? id : entry.id())
+                    .entries().get(name);
+            if (entry == null) {
+                return null;
+            }
+        }
+        return entry;
+    }
+    /** Returns tree ID, or the empty tree if ID is null, with CHANGES
+     *  applied and its changed subtrees written, or null if nothing is
+     *  left in it. A name cannot hold both a file and a directory: a
+     *  file may replace a directory, or a directory a file, only if
+     *  CHANGES empties or removes what was there. Paths in CHANGES are
+     *  relative to the tree, whose own path is PREFIX.
+     * @param store store
+     * @param id id
+     * @param prefix prefix
+     * @param changes changes
+     * @return Tree
+     **/
+    private static Tree applyTo(MetaStore store, String id, String prefix,
+                                Map<String, String> changes)
+            throws IOException {
+        Tree base = id == null ? EMPTY : store.readTree(id);
+        TreeMap<String, Entry> entries = new TreeMap<>(base.entries());
+        HashMap<String, HashMap<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> c : changes.entrySet()) {
+            String path = c.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new HashMap<>())
+                        .put(path.substring(slash + 1), c.getValue());
+            }
+        }
+        for (Map.Entry<String, String> c : changes.entrySet()) {
+            String path = c.getKey();
+            if (path.indexOf('/') >= 0) {
+                continue;
+            }
+            Entry old = entries.get(path);
+            if (c.getValue() == null) {
+                if (old != null && !old.isTree()) {
+                    entries.remove(path);
+                }
+            } else if (old != null && old.isTree()
+                    && !below.containsKey(path)) {
+                throw conflict(prefix + path);
+            } else {
+                entries.put(path, new Entry(false, c.getValue()));
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> dir
+                : below.entrySet()) {
+            Entry old = base.entries().get(dir.getKey());
+            Entry now = entries.get(dir.getKey());
+            Tree sub = applyTo(store,
+                    old != null && old.isTree() ? old.id() : null,
+                    prefix + dir.getKey() + "/", dir.getValue());
+            if (sub == null) {
+                if (now != null && now.isTree()) {
+                    entries.remove(dir.getKey());
+                }
+            } else if (now != null && !now.isTree()) {
+                throw conflict(prefix + dir.getKey());
+            } else {
+                store.appendTree(sub);
+                entries.put(dir.getKey(), new Entry(true, sub.getSha1()));
+            }
+        }
+        if (entries.isEmpty()) {
+            return null;
+        }
+        return new Tree(entries);
+    }
+    /** Returns the error for PATH left holding both a file and a
+     *  directory.
+     * @param path path
+     * @return IOException
+     **/
+    private static IOException conflict(String path) {
+        return new IOException(path + " would be both a file and a"
+                + " directory");
+    }
+
+    /** Receives the paths that differ between two trees. **/
+    interface DiffVisitor {
+        /** Takes PATH, which holds blob OLD in the first tree and blob
+         *  NOW in the second, either null where there is none.
+         * @param path path
+         * @param old old
+         * @param now now
+         **/
+        void visit(String path, String old, String now) throws IOException;
+    }
+
+    /** One name in a tree: a blob or a subtree, and its id. **/
+    static final class Entry {
+        /** True for a subtree, false for a blob. **/
+        private final boolean _isTree;
+        /** Id of the blob or subtree. **/
+        private final String _id;
+
+        /** An entry for blob or tree ID.
+         * @param isTree isTree
+         * @param id id
+         **/
+        Entry(boolean isTree, String id) {
+            _isTree = isTree;
+            _id = id;
+        }
+        /** Returns true for a subtree. **/
+        boolean isTree() {
+            return _isTree;
+        }
+        /** Returns the id. **/
+        String id() {
+            return _id;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/** Assorted utilities: SHA-1 ids, reading whole files, listing plain
+ *  files and joining paths.
+ *  @author Adam
+ */
+class Utils {
+    /** Not instantiable. **/
+    private Utils() {
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, which may
+     *  be any mixture of byte arrays and Strings, in lower-case hex.
+     * @param vals vals
+     * @return String
+     **/
+    static String sha1(Object... vals) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + "SHA-1");
+        }
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
+            }
+        }
+        return MetaStore.toHex(md.digest());
+    }
+    /** Returns the entire contents of FILE as a byte array.
+     * @param file file
+     * @return byte[]
+     **/
+    static byte[] readContents(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+    /** Returns the entire contents of FILE as UTF-8 text.
+     * @param file file
+     * @return String
+     **/
+    static String readContentsAsString(File file) {
+        return new String(readContents(file), StandardCharsets.UTF_8);
+    }
+    /** Returns the names of the plain files in DIR, sorted, or null if
+     *  DIR is not a directory.
+     * @param dir dir
+     * @return List
+     **/
+    static List<String> plainFilenamesIn(File dir) {
+        String[] files = dir.list((d, name) -> new File(d, name).isFile());
+        if (files == null) {
+            return null;
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+    /** Returns the file FIRST with OTHERS appended to it as path
+     *  components.
+     * @param first first
+     * @param others others
+     * @return File
+     **/
+    static File join(String first, String... others) {
+        return Paths.get(first, others).toFile();
+    }
+    /** Returns the file FIRST with OTHERS appended to it as path
+     *  components.
+     * @param first first
+     * @param others others
+     * @return File
+     **/
+    static File join(File first, String... others) {
+        return Paths.get(first.getPath(), others).toFile();
+    }
+}
@@ -0,0 +1,262 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** Keeps the set of working files up to date from the filesystem's
+ *  change events, for a process that keeps the repo open, so a command
+ *  neither lists the tree nor stats files nothing touched.
+ *
+ *  Every directory below the root but the repo's own folder is
+ *  watched, and a thread applies each event as it comes: the path it
+ *  names is looked at again, and a new directory is watched and listed.
+ *  Every path an event named since the last command is dirty. The id a
+ *  command hashed a file to is known until an event names that file, so
+ *  only dirty files are read or even stat'ed again.
+ *
+ *  Events arrive some time after the change, so before each command
+ *  a cookie file is made in .gitlet and the command waits until its
+ *  event comes, by which time every earlier change has been applied.
+ *  If events were lost, or the cookie never comes, the tree is listed
+ *  again from scratch and nothing is known.
+ *  @author Adam
+ */
+final class Watcher {
+    /** Prefix of the names of cookie files. **/
+    private static final String COOKIE = "watch-";
+    /** Milliseconds to wait for a cookie before listing the tree. **/
+    private static final long TIMEOUT = 2000;
+
+    /** Directory the working files live in. **/
+    private final File _root;
+    /** Directory the cookies are made in. **/
+    private final File _cookies;
+    /** The events. **/
+    private WatchService _service;
+    /** Path of each watched directory relative to the root, ending in
+     *  '/' unless it is the root, by its key. **/
+    private final HashMap<WatchKey, String> _dirs = new HashMap<>();
+    /** Key of the cookie directory. **/
+    private WatchKey _cookieKey;
+    /** Every working file, sorted. **/
+    private final TreeSet<String> _files = new TreeSet<>();
+    /** Paths named by an event since the last command. **/
+    private final HashSet<String> _dirty = new HashSet<>();
+    /** Id each file hashed to, while no event has named it since.
+     *  Guarded, like _dirty, by this watcher, so an event applied while
+     *  a file is being hashed is never lost to the id learnt after. **/
+    private final HashMap<String, String> _known = new HashMap<>();
+    /** True if events may have been lost since the tree was listed. **/
+    private boolean _overflow = true;
+    /** Number of the last cookie made. **/
+    private long _sent;
+    /** Number of the last cookie whose event has come. **/
+    private long _seen;
+
+    /** A watcher of the files below ROOT, making cookies in COOKIES.
+     * @param root root
+     * @param cookies cookies
+     **/
+    Watcher(File root, File cookies) {
+        _root = root;
+        _cookies = cookies;
+    }
+    /** Starts watching, listing the tree and applying events on a
+     *  thread of its own. **/
+    synchronized void start() throws IOException {
+        _service = _root.toPath().getFileSystem().newWatchService();
+        _cookieKey = _cookies.toPath().register(_service,
+                StandardWatchEventKinds.ENTRY_CREATE);
+        rescan();
+        Thread thread = new Thread(this::run, "gitlet-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    /** Waits until every change made before now has been applied, then
+     *  forgets the ids of the files changed since the last call. Returns
+     *  false if the tree could not be watched, in which case nothing it
+     *  holds can be trusted. **/
+    synchronized boolean sync() {
+        long cookie = ++_sent;
+        File file = Utils.join(_cookies, COOKIE + cookie);
+        try {
+            file.createNewFile();
+            long deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+            while (_seen < cookie && !_overflow) {
+                long left = TimeUnit.NANOSECONDS.toMillis(
+                        deadline - System.nanoTime());
+                if (left <= 0) {
+                    _overflow = true;
+                    break;
+                }
+                wait(left);
+            }
+        } catch (IOException excp) {
+            _overflow = true;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            _overflow = true;
+        } finally {
+            file.delete();
+        }
+        if (_overflow) {
+            try {
+                rescan();
+            } catch (IOException excp) {
+                return false;
+            }
+        }
+        for (String path : _dirty) {
+            _known.remove(path);
+        }
+        _dirty.clear();
+        return true;
+    }
+    /** Returns the paths of every working file, sorted. **/
+    synchronized List<String> files() {
+        return new ArrayList<>(_files);
+    }
+    /** Returns true if PATH is a working file.
+     * @param path path
+     * @return boolean
+     **/
+    synchronized boolean exists(String path) {
+        return _files.contains(path);
+    }
+    /** Returns the id the file PATH hashed to, if nothing changed it
+     *  since, or null.
+     * @param path path
+     * @return String
+     **/
+    synchronized String known(String path) {
+        return _known.get(path);
+    }
+    /** Records that the file PATH hashed to ID, unless an event has
+     *  named it since the last command, in which case the contents
+     *  hashed may already be stale.
+     * @param path path
+     * @param id id
+     **/
+    synchronized void learn(String path, String id) {
+        if (!_dirty.contains(path)) {
+            _known.put(path, id);
+        }
+    }
+    /** Lists the whole tree again, watching every directory in it, and
+     *  forgets every id. **/
+    private void rescan() throws IOException {
+        _files.clear();
+        _dirty.clear();
+        _known.clear();
+        _overflow = true;
+        watch(_root, "");
+        _overflow = false;
+    }
+    /** Watches DIR, whose paths start with PREFIX, and every directory
+     *  below it, adding the files in them.
+     * @param dir dir
+     * @param prefix prefix
+     **/
+    private void watch(File dir, String prefix) throws IOException {
+        WatchKey key = dir.toPath().register(_service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        _dirs.put(key, prefix);
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String path = prefix + child.getName();
+            if (child.isFile()) {
+                _files.add(path);
+                _dirty.add(path);
+            } else if (child.isDirectory()
+                    && !path.equals(Gitlet.GITLET_FOLDER.getName())) {
+                watch(child, path + "/");
+            }
+        }
+    }
+    /** Applies events until the watch service is closed. **/
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = _service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            synchronized (this) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        _overflow = true;
+                    } else if (key == _cookieKey) {
+                        cookie(event.context().toString());
+                    } else if (_dirs.containsKey(key)) {
+                        update(_dirs.get(key) + event.context(),
+                                event.kind());
+                    }
+                }
+                if (!key.reset()) {
+                    _dirs.remove(key);
+                }
+                notifyAll();
+            }
+        }
+    }
+    /** Notes that the file NAME was made in the cookie directory.
+     * @param name name
+     **/
+    private void cookie(String name) {
+        if (name.startsWith(COOKIE)) {
+            try {
+                long cookie = Long.parseLong(name.substring(COOKIE.length()));
+                _seen = Math.max(_seen, cookie);
+            } catch (NumberFormatException excp) {
+                return;
+            }
+        }
+    }
+    /** Looks again at PATH, which an event of KIND named, marking it
+     *  and every file that was below it dirty.
+     * @param path path
+     * @param kind kind
+     **/
+    private void update(String path, WatchEvent.Kind<?> kind) {
+        if (path.equals(Gitlet.GITLET_FOLDER.getName())) {
+            return;
+        }
+        File file = Utils.join(_root, path);
+        _dirty.add(path);
+        if (file.isFile()) {
+            _files.add(path);
+        } else {
+            _files.remove(path);
+        }
+        if (!file.isDirectory()) {
+            SortedSet<String> below = _files.subSet(path + "/", path + "0");
+            _dirty.addAll(below);
+            below.clear();
+        } else if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            try {
+                watch(file, path + "/");
+            } catch (IOException excp) {
+                _overflow = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/** The working directory as the commands see it, with paths relative
+ *  to its root and '/' between directories. Listing it and
+ *  hashing its files is split across a bounded fork/join pool, so a
+ *  scan of many files keeps every core and the disk queue busy, while
+ *  results always come back sorted by path.
+ *  @author Adam
+ */
+final class WorkTree {
+    /** Number of workers; hashing waits on the disk as much as on the
+     *  CPU, so by default there are two per core. **/
+    static final int THREADS = Integer.getInteger("gitlet.threads",
+            2 * Runtime.getRuntime().availableProcessors());
+    /** Paths below which a task hashes its share itself. **/
+    private static final int THRESHOLD = 16;
+    /** Workers shared by every scan, created on first use. **/
+    private static ForkJoinPool pool;
+
+    /** Directory the working files live in. **/
+    private final File _root;
+    /** Stat cache consulted before any file is read. **/
+    private final StatCache _stats;
+    /** Watcher of the working files, or null if they are not watched. **/
+    private Watcher _watcher;
+    /** True if the watcher is up to date for the current command. **/
+    private boolean _watching;
+
+    /** The working tree rooted at ROOT, hashed through STATS.
+     * @param root root
+     * @param stats stats
+     **/
+    WorkTree(File root, StatCache stats) {
+        _root = root;
+        _stats = stats;
+    }
+    /** Returns the paths of every working file below the root, outside
+     *  the repo's own folder, sorted. Directories are listed in
+     *  parallel, unless the watcher already holds the list. **/
+    List<String> files() {
+        if (_watching) {
+            return _watcher.files();
+        }
+        List<String> allFiles = pool().invoke(new ListTask(_root, ""));
+        Collections.sort(allFiles);
+        return allFiles;
+    }
+    /** Returns true if PATH is a working file.
+     * @param path path
+     * @return boolean
+     **/
+    boolean exists(String path) {
+        return _watching ? _watcher.exists(path) : file(path).isFile();
+    }
+    /** Watches the working files from now on, so that listing them and
+     *  hashing those that did not change costs no disk access. Only a
+     *  process that keeps the repo open across commands gains by it. **/
+    void watch() throws IOException {
+        Watcher watcher = new Watcher(_root, Gitlet.GITLET_FOLDER);
+        watcher.start();
+        _watcher = watcher;
+    }
+    /** Readies the watcher, if any, for another command; without one,
+     *  or if it lost track of the tree, files are listed and stat'ed as
+     *  usual. **/
+    void sync() {
+        _watching = _watcher != null && _watcher.sync();
+    }
+    /** Returns ARG, a path as typed on the command line, as a path
+     *  relative to the root with '/' between its components; the root
+     *  itself is "".
+     * @param arg arg
+     * @return String
+     **/
+    String normalize(String arg) {
+        Path root = _root.toPath().toAbsolutePath().normalize();
+        Path path = root.resolve(arg).normalize();
+        if (!path.startsWith(root)) {
+            return arg;
+        }
+        StringBuilder result = new StringBuilder();
+        for (Path name : root.relativize(path)) {
+            if (result.length() > 0) {
+                result.append('/');
+            }
+            result.append(name);
+        }
+        return result.toString();
+    }
+    /** Deletes the working file PATH, then any directories above it
+     *  that are left empty. A file now where a directory above PATH was
+     *  is left alone.
+     * @param path path
+     **/
+    void delete(String path) {
+        File f = file(path);
+        f.delete();
+        File dir = f.getParentFile();
+        while (dir != null && !dir.equals(_root) && dir.isDirectory()
+                && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+    /** Returns the file for PATH.
+     * @param path path
+     * @return File
+     **/
+    File file(String path) {
+        return Utils.join(_root, path);
+    }
+    /** Returns each of PATHS that exists mapped to the id of the blob
+     *  it holds, hashing in parallel.
+     * @param paths paths
+     * @return TreeMap
+     **/
+    TreeMap<String, String> hash(List<String> paths) throws IOException {
+        try {
+            if (paths.size() <= THRESHOLD) {
+                return new HashTask(paths).compute();
+            }
+            return pool().invoke(new HashTask(paths));
+        } catch (UncheckedIOException excp) {
+            throw excp.getCause();
+        }
+    }
+    /** Runs TASKS on the shared pool and returns their results in the
+     *  order of the tasks.
+     * @param tasks tasks
+     * @return List
+     **/
+    static <T> List<T> parallel(List<? extends Callable<T>> tasks)
+            throws IOException {
+        ArrayList<T> results = new ArrayList<>();
+        try {
+            for (Future<T> result : pool().invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof IOException) {
+                throw (IOException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+        return results;
+    }
+    /** Returns the shared worker pool. **/
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Math.max(1, THREADS));
+        }
+        return pool;
+    }
+
+    /** Lists the files below one directory, forking a task for each
+     *  subdirectory. **/
+    private final class ListTask extends RecursiveTask<List<String>> {
+        /** Tasks are never serialized; this keeps -Xlint quiet. **/
+        private static final long serialVersionUID = 1L;
+        /** Directory to list. **/
+        private final File _dir;
+        /** Path of _dir relative to the root, ending in '/' unless
+         *  _dir is the root. **/
+        private final String _prefix;
+
+        /** A task listing DIR, whose paths start with PREFIX.
+         * @param dir dir
+         * @param prefix prefix
+         **/
+        ListTask(File dir, String prefix) {
+            _dir = dir;
+            _prefix = prefix;
+        }
+        @Override
+        protected List<String> compute() {
+            ArrayList<String> result = new ArrayList<>();
+            File[] children = _dir.listFiles();
+            if (children == null) {
+                return result;
+            }
+            ArrayList<ListTask> subdirs = new ArrayList<>();
+            for (File child : children) {
+                String path = _prefix + child.getName();
+                if (child.isFile()) {
+                    result.add(path);
+                } else if (child.isDirectory()
+                        && !path.equals(Gitlet.GITLET_FOLDER.getName())) {
+                    ListTask task = new ListTask(child, path + "/");
+                    task.fork();
+                    subdirs.add(task);
+                }
+            }
+            for (ListTask task : subdirs) {
+                result.addAll(task.join());
+            }
+            return result;
+        }
+    }
+
+    /** Hashes a slice of the paths, splitting it while it is large. **/
+    private final class HashTask
+            extends RecursiveTask<TreeMap<String, String>> {
+        /** Tasks are never serialized; this keeps -Xlint quiet. **/
+        private static final long serialVersionUID = 1L;
+        /** Paths to hash. **/
+        private final List<String> _paths;
+
+        /** A task hashing PATHS.
+         * @param paths paths
+         **/
+        HashTask(List<String> paths) {
+            _paths = paths;
+        }
+        @Override
+        protected TreeMap<String, String> compute() {
+            if (_paths.size() > THRESHOLD) {
+                int mid = _paths.size() / 2;
+                HashTask left = new HashTask(_paths.subList(0, mid));
+                left.fork();
+                TreeMap<String, String> result =
+                        new HashTask(_paths.subList(mid, _paths.size()))
+                                .compute();
+                result.putAll(left.join());
+                return result;
+            }
+            TreeMap<String, String> result = new TreeMap<>();
+            try {
+                for (String path : _paths) {
+                    String id = _watching ? _watcher.known(path) : null;
+                    File f = file(path);
+                    if (id == null && f.isFile()) {
+                        id = _stats.hash(path, f);
+                        if (_watching) {
+                            _watcher.learn(path, id);
+                        }
+                    }
+                    if (id != null) {
+                        result.put(path, id);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+            return result;
+        }
+    }
+}
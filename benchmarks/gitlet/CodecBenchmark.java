@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Compares the blob codecs on a synthetic corpus of text files: the
+ *  size the blobs take on disk, and how fast they are committed
+ *  (written into the store) and checked out again.
+ *  Usage: java -cp benchmarks/target/benchmarks.jar gitlet.CodecBenchmark
+ *  [files] [kilobytes per file]
+ *  @author Adam
+ */
+public class CodecBenchmark {
+    /** Words the synthetic files are made of. **/
+    private static final String[] WORDS = {
+        "commit", "branch", "merge", "blob", "tree", "head", "index",
+        "stage", "checkout", "reset", "status", "log", "find", "remove",
+        "the", "a", "of", "to", "and", "in", "is", "that", "for", "it",
+    };
+
+    /** Runs the benchmark.
+     * @param args number of files and kilobytes per file
+     **/
+    public static void main(String[] args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int kilobytes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        File corpus = Files.createTempDirectory("gitlet-corpus").toFile();
+        List<File> sources = makeCorpus(corpus, files, kilobytes);
+        long raw = 0;
+        for (File f : sources) {
+            raw += f.length();
+        }
+        System.out.printf("%d files, %.1f MB raw%n", files, raw / 1e6);
+        System.out.printf("%-14s %10s %8s %14s %14s%n", "codec",
+                "size (MB)", "ratio", "commit (MB/s)", "checkout (MB/s)");
+        for (Codec codec : Codec.values()) {
+            run(codec, sources, raw);
+        }
+        delete(corpus);
+    }
+    /** Commits and checks out SOURCES with CODEC and prints the results.
+     * @param codec codec
+     * @param sources sources
+     * @param raw total size of SOURCES in bytes
+     **/
+    private static void run(Codec codec, List<File> sources, long raw)
+            throws IOException {
+        File repo = Files.createTempDirectory("gitlet-bench").toFile();
+        File blobs = Utils.join(repo, "blobs");
+        File work = Utils.join(repo, "work");
+        blobs.mkdir();
+        work.mkdir();
+        BlobStore store = new BlobStore(blobs, codec,
+                new Journal(repo, new Locks()));
+
+        long start = System.nanoTime();
+        List<String> ids = new ArrayList<>();
+        for (File f : sources) {
+            ids.add(store.store(f));
+        }
+        double commitSecs = (System.nanoTime() - start) / 1e9;
+
+        long size = 0;
+        for (String id : ids) {
+            size += store.file(id).length();
+        }
+
+        start = System.nanoTime();
+        for (int i = 0; i < ids.size(); i++) {
+            store.checkout(ids.get(i),
+                    Utils.join(work, sources.get(i).getName()));
+        }
+        double checkoutSecs = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-14s %10.2f %8.2f %14.1f %14.1f%n",
+                codec.name().toLowerCase(), size / 1e6, (double) raw / size,
+                raw / 1e6 / commitSecs, raw / 1e6 / checkoutSecs);
+        delete(repo);
+    }
+    /** Writes FILES text files of about KILOBYTES each into DIR.
+     * @param dir dir
+     * @param files files
+     * @param kilobytes kilobytes
+     * @return List
+     **/
+    private static List<File> makeCorpus(File dir, int files, int kilobytes)
+            throws IOException {
+        Random random = new Random(61);
+        List<File> result = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            StringBuilder text = new StringBuilder();
+            int line = 0;
+            while (text.length() < kilobytes * 1024) {
+                text.append(line++).append(':');
+                for (int w = random.nextInt(12); w >= 0; w--) {
+                    text.append(' ')
+                            .append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                text.append('\n');
+            }
+            File f = Utils.join(dir, "file" + i + ".txt");
+            Files.write(f.toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+            result.add(f);
+        }
+        return result;
+    }
+    /** Deletes FILE and everything under it.
+     * @param file file
+     **/
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Times the diff core on large synthetic files: a file of LINES
+ *  random lines against a copy with EDITS lines replaced, inserted or
+ *  deleted. diff is the streaming FileDiff, writing its output
+ *  nowhere; strings matches the same files after splitting them into
+ *  String lines, the way merge reads them, for comparison.
+ *  @author Adam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+    /** Words the synthetic lines are made of. **/
+    private static final String[] WORDS = {
+        "commit", "branch", "merge", "blob", "tree", "head", "index",
+        "stage", "checkout", "reset", "status", "log", "find", "remove",
+        "the", "a", "of", "to", "and", "in", "is", "that", "for", "it",
+    };
+
+    /** Lines in the old file. **/
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+    /** Lines changed in the new file. **/
+    @Param({"10", "1000"})
+    public int edits;
+
+    /** The old file. **/
+    private byte[] _old;
+    /** The new file. **/
+    private byte[] _new;
+
+    /** Makes the two files. **/
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(lines * 31L + edits);
+        StringBuilder old = new StringBuilder();
+        StringBuilder now = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            String line = line(random);
+            old.append(line);
+            if (random.nextInt(lines) >= edits) {
+                now.append(line);
+                continue;
+            }
+            switch (random.nextInt(3)) {
+            case 0:
+                now.append(line(random));
+                break;
+            case 1:
+                now.append(line).append(line(random));
+                break;
+            default:
+                break;
+            }
+        }
+        _old = old.toString().getBytes(StandardCharsets.UTF_8);
+        _new = now.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    /** Diffs the files with FileDiff.
+     * @param bh bh
+     **/
+    @Benchmark
+    public void diff(Blackhole bh) throws IOException {
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bh.consume(b);
+            }
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bh.consume(len);
+            }
+        };
+        FileDiff.write("file.txt", () -> new ByteArrayInputStream(_old),
+                () -> new ByteArrayInputStream(_new), out);
+    }
+    /** Matches the files as String lines.
+     * @return int[]
+     **/
+    @Benchmark
+    public int[] strings() {
+        List<String> a = LineDiff.lines(
+                new String(_old, StandardCharsets.UTF_8));
+        List<String> b = LineDiff.lines(
+                new String(_new, StandardCharsets.UTF_8));
+        HashMap<String, Integer> ids = new HashMap<>();
+        return LineDiff.match(LineDiff.intern(a, ids),
+                LineDiff.intern(b, ids));
+    }
+
+    /** Returns a random line of words, ending in a newline.
+     * @param random random
+     * @return String
+     **/
+    private static String line(Random random) {
+        StringBuilder line = new StringBuilder();
+        for (int n = 4 + random.nextInt(8); n > 0; n--) {
+            line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        line.append(random.nextInt(1000)).append('\n');
+        return line.toString();
+    }
+}
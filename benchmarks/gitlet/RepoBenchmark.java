@@ -0,0 +1,297 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times each command on a synthetic repository of COMMITS commits of
+ *  FILES files, spread over BRANCHES branches, built in a temp
+ *  directory. Every command runs as Main runs it: the repo is opened,
+ *  the command run and the repo saved, so open covers what every
+ *  command pays to deserialize and serialize as history grows.
+ *
+ *  Results are given as throughput and as sampled latencies, with
+ *  their percentiles; run with -prof gc for allocation rates. Gitlet
+ *  finds its repository through user.dir when it is first loaded, so
+ *  each benchmark needs a fork of its own, as it gets by default.
+ *  @author Adam
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepoBenchmark {
+    /** Files changed by each generated commit. **/
+    static final int CHANGES = 10;
+    /** Lines in each generated file. **/
+    static final int LINES = 20;
+    /** Files in each generated directory. **/
+    static final int PER_DIRECTORY = 100;
+    /** Where commands print, dropping what they print. **/
+    static final PrintStream NULL_OUT =
+            new PrintStream(OutputStream.nullOutputStream());
+
+    /** A generated repository, the working directory of the fork. **/
+    @State(Scope.Benchmark)
+    public static class Repo {
+        /** Commits generated. **/
+        @Param({"100", "1000"})
+        public int commits;
+        /** Files in each commit. **/
+        @Param({"100", "10000"})
+        public int files;
+        /** Branches, master among them. **/
+        @Param({"2", "8"})
+        public int branches;
+
+        /** The working directory. **/
+        private File _dir;
+        /** Chooses the files changed. **/
+        private final Random _random = new Random(42);
+        /** The current branch. **/
+        private String _branch = "master";
+        /** Commits made, so every message is new. **/
+        private int _made;
+        /** Edits made, so every file written is new. **/
+        private int _edits;
+
+        /** Builds the repository. **/
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            _dir = Files.createTempDirectory("gitlet-bench").toFile();
+            System.setProperty("user.dir", _dir.getPath());
+            run("init");
+            for (int f = 0; f < files; f++) {
+                write(f, 0);
+            }
+            run("add", ".");
+            commit();
+            for (int b = 1; b < branches; b++) {
+                run("branch", branch(b));
+            }
+            for (int c = 1; c < commits; c++) {
+                checkout(branch(c % branches));
+                change();
+            }
+            checkout("master");
+        }
+        /** Deletes the repository. **/
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            try (Stream<Path> paths = Files.walk(_dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder())
+                        .forEach(p -> p.toFile().delete());
+            }
+        }
+
+        /** Runs the command ARGS as Main would.
+         * @param args args
+         **/
+        void run(String... args) throws Exception {
+            Gitlet git = Main.dispatch(Gitlet.deserialize(Main.REPO), args,
+                    NULL_OUT, NULL_OUT);
+            Gitlet.serialize(git, Main.REPO);
+        }
+        /** Changes CHANGES files and returns their paths. **/
+        List<String> edit() throws IOException {
+            ArrayList<String> paths = new ArrayList<>();
+            for (int i = 0; i < CHANGES; i++) {
+                int f = _random.nextInt(files);
+                write(f, ++_edits);
+                paths.add(path(f));
+            }
+            return paths;
+        }
+        /** Changes CHANGES files, adds them and commits. **/
+        void change() throws Exception {
+            List<String> paths = edit();
+            paths.add(0, "add");
+            run(paths.toArray(new String[0]));
+            commit();
+        }
+        /** Commits what is staged with a new message. **/
+        void commit() throws Exception {
+            run("commit", "commit " + _made);
+            _made += 1;
+        }
+        /** Checks out BRANCH unless it is current.
+         * @param branch branch
+         **/
+        void checkout(String branch) throws Exception {
+            if (!branch.equals(_branch)) {
+                run("checkout", branch);
+                _branch = branch;
+            }
+        }
+        /** Returns the path of file F.
+         * @param f f
+         * @return String
+         **/
+        String path(int f) {
+            return "d" + (f / PER_DIRECTORY) + "/f" + f + ".txt";
+        }
+        /** Writes VERSION of file F.
+         * @param f f
+         * @param version version
+         **/
+        private void write(int f, int version) throws IOException {
+            File file = Utils.join(_dir, path(f));
+            file.getParentFile().mkdirs();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < LINES; i++) {
+                text.append("file ").append(f).append(" version ")
+                        .append(version).append(" line ").append(i)
+                        .append('\n');
+            }
+            Files.write(file.toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        /** Returns the name of branch B.
+         * @param b b
+         * @return String
+         **/
+        private static String branch(int b) {
+            return b == 0 ? "master" : "b" + b;
+        }
+    }
+
+    /** Files changed before each call. **/
+    @State(Scope.Thread)
+    public static class Edit {
+        /** The add command for the changed files. **/
+        private String[] _args;
+
+        /** Changes the files.
+         * @param repo repo
+         **/
+        @Setup(Level.Invocation)
+        public void setUp(Repo repo) throws IOException {
+            List<String> paths = repo.edit();
+            paths.add(0, "add");
+            _args = paths.toArray(new String[0]);
+        }
+    }
+
+    /** Changes staged before each call. **/
+    @State(Scope.Thread)
+    public static class Staged {
+        /** Changes the files and adds them.
+         * @param repo repo
+         **/
+        @Setup(Level.Invocation)
+        public void setUp(Repo repo) throws Exception {
+            List<String> paths = repo.edit();
+            paths.add(0, "add");
+            repo.run(paths.toArray(new String[0]));
+        }
+    }
+
+    /** A branch with a commit of its own, made before each call while
+     *  master gets one too, to be merged into master. **/
+    @State(Scope.Thread)
+    public static class Diverged {
+        /** Branches made. **/
+        private int _count;
+        /** The branch. **/
+        private String _branch;
+
+        /** Makes the branch.
+         * @param repo repo
+         **/
+        @Setup(Level.Invocation)
+        public void setUp(Repo repo) throws Exception {
+            _branch = "topic" + _count++;
+            repo.checkout("master");
+            repo.run("branch", _branch);
+            repo.checkout(_branch);
+            repo.change();
+            repo.checkout("master");
+            repo.change();
+        }
+    }
+
+    /** Opens and saves the repo, as every command does.
+     * @param repo repo
+     **/
+    @Benchmark
+    public void open(Repo repo) throws Exception {
+        Gitlet.serialize(Gitlet.deserialize(Main.REPO), Main.REPO);
+    }
+    /** Stages changed files.
+     * @param repo repo
+     * @param edit edit
+     **/
+    @Benchmark
+    public void add(Repo repo, Edit edit) throws Exception {
+        repo.run(edit._args);
+    }
+    /** Commits staged changes.
+     * @param repo repo
+     * @param staged staged
+     **/
+    @Benchmark
+    public void commit(Repo repo, Staged staged) throws Exception {
+        repo.commit();
+    }
+    /** Prints the status.
+     * @param repo repo
+     **/
+    @Benchmark
+    public void status(Repo repo) throws Exception {
+        repo.run("status");
+    }
+    /** Checks out another branch.
+     * @param repo repo
+     **/
+    @Benchmark
+    public void checkout(Repo repo) throws Exception {
+        repo.checkout(repo._branch.equals("master") ? "b1" : "master");
+    }
+    /** Merges a diverged branch into master.
+     * @param repo repo
+     * @param diverged diverged
+     **/
+    @Benchmark
+    public void merge(Repo repo, Diverged diverged) throws Exception {
+        repo.run("merge", diverged._branch);
+    }
+    /** Prints the log of master.
+     * @param repo repo
+     **/
+    @Benchmark
+    public void log(Repo repo) throws Exception {
+        repo.run("log");
+    }
+    /** Finds a commit by its message.
+     * @param repo repo
+     **/
+    @Benchmark
+    public void find(Repo repo) throws Exception {
+        repo.run("find", "commit " + (repo.commits / 2));
+    }
+}
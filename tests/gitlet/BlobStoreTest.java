@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of BlobStore: blobs stored read back as they were, under the
+ *  codec that suits them.
+ *  @author Adam
+ */
+public class BlobStoreTest {
+    /** Directory each test keeps its store and files in. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** The store, writing with DEFLATE. **/
+    private BlobStore _blobs;
+
+    /** Opens an empty store. **/
+    @Before
+    public void setUp() throws IOException {
+        _blobs = new BlobStore(dir.newFolder("blobs"), Codec.DEFLATE,
+                new Journal(dir.getRoot(), new Locks()));
+    }
+
+    /** Text is kept deflated, and reads back as it was. **/
+    @Test
+    public void compressible() throws IOException {
+        byte[] contents = "the same line again\n".repeat(10000)
+                .getBytes(StandardCharsets.UTF_8);
+        String id = store(contents);
+        assertEquals(Utils.sha1(contents), id);
+        assertEquals(Codec.DEFLATE.id(), header(id));
+        assertTrue(_blobs.file(id).length() < contents.length / 8);
+        assertArrayEquals(contents, _blobs.read(id));
+    }
+    /** Random bytes, which deflate cannot shrink, are kept as they are,
+     *  and checked out file to file. **/
+    @Test
+    public void incompressible() throws IOException {
+        byte[] contents = new byte[3 * BlobStore.BUFFER_SIZE + 17];
+        new Random(0).nextBytes(contents);
+        String id = store(contents);
+        assertEquals(Utils.sha1(contents), id);
+        assertEquals(Codec.STORE.id(), header(id));
+        assertEquals(contents.length + 1, _blobs.file(id).length());
+        File out = new File(dir.getRoot(), "out");
+        _blobs.checkout(id, out);
+        assertArrayEquals(contents, Files.readAllBytes(out.toPath()));
+    }
+    /** An empty file is a blob like any other. **/
+    @Test
+    public void empty() throws IOException {
+        String id = store(new byte[0]);
+        assertEquals(Utils.sha1(new byte[0]), id);
+        assertArrayEquals(new byte[0], _blobs.read(id));
+    }
+    /** Storing the same contents twice keeps one blob. **/
+    @Test
+    public void twice() throws IOException {
+        byte[] contents = "once\n".getBytes(StandardCharsets.UTF_8);
+        String id = store(contents);
+        assertEquals(id, store(contents));
+        assertTrue(_blobs.contains(id));
+        assertEquals(1, _blobs.file(id).getParentFile()
+                .list((d, name) -> !new File(d, name).isDirectory()).length);
+    }
+
+    /** Writes CONTENTS to a file, stores it and returns its id.
+     * @param contents contents
+     * @return String
+     **/
+    private String store(byte[] contents) throws IOException {
+        File source = dir.newFile();
+        Files.write(source.toPath(), contents);
+        return _blobs.store(source);
+    }
+    /** Returns the codec byte blob ID is kept with.
+     * @param id id
+     * @return byte
+     **/
+    private byte header(String id) throws IOException {
+        try (InputStream in = new FileInputStream(_blobs.file(id))) {
+            return (byte) in.read();
+        }
+    }
+}
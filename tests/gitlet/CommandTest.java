@@ -0,0 +1,126 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of the everyday commands, run as Main runs them, each reading
+ *  what the one before it left in the repo.
+ *  @author Adam
+ */
+public class CommandTest {
+    /** Starts each test in a new repo. **/
+    @Before
+    public void setUp() throws Exception {
+        TestRepo.clear();
+        TestRepo.run("init");
+    }
+
+    /** Commits made by earlier commands are logged, found by message,
+     *  and have their files checked out again. **/
+    @Test
+    public void commits() throws Exception {
+        TestRepo.commit("a.txt", "one\n", "first");
+        String first = TestRepo.head();
+        TestRepo.commit("a.txt", "two\n", "second");
+        String second = TestRepo.head();
+        String log = TestRepo.run("log");
+        assertTrue(log.indexOf("commit " + second)
+                < log.indexOf("commit " + first));
+        assertTrue(log.contains("initial commit"));
+        assertEquals(first + "\n", TestRepo.run("find", "first"));
+        assertEquals("Found no commit with that message\n",
+                TestRepo.run("find", "third"));
+        TestRepo.run("checkout", first.substring(0, 8), "--", "a.txt");
+        assertEquals("one\n", TestRepo.read("a.txt"));
+        TestRepo.run("checkout", "--", "a.txt");
+        assertEquals("two\n", TestRepo.read("a.txt"));
+        assertEquals("No changes added to the commit\n",
+                TestRepo.run("commit", "nothing"));
+    }
+    /** Staged, removed, changed and untracked files are kept between
+     *  commands and listed by status. **/
+    @Test
+    public void status() throws Exception {
+        TestRepo.commit("a.txt", "a\n", "a");
+        TestRepo.commit("b.txt", "b\n", "b");
+        TestRepo.write("c.txt", "c\n");
+        TestRepo.run("add", "c.txt");
+        TestRepo.run("rm", "b.txt");
+        TestRepo.write("a.txt", "changed\n");
+        TestRepo.write("d.txt", "d\n");
+        assertFalse(TestRepo.exists("b.txt"));
+        assertEquals("=== Branches ===\n*master\n\n"
+                + "=== Staged Files ===\nc.txt\n\n"
+                + "=== Removed Files ===\nb.txt\n\n"
+                + "=== Modifications Not Staged For Commit ===\n"
+                + "a.txt(modified)\n\n"
+                + "=== Untracked Files ===\nd.txt\n\n",
+                TestRepo.run("status"));
+        TestRepo.run("commit", "c");
+        assertTrue(TestRepo.run("status").contains(
+                "=== Staged Files ===\n\n=== Removed Files ===\n\n"));
+        assertEquals("No reason to remove the file.\n",
+                TestRepo.run("rm", "d.txt"));
+    }
+    /** Branches are made, switched between and removed, and reset moves
+     *  the current branch back. **/
+    @Test
+    public void branches() throws Exception {
+        TestRepo.commit("a.txt", "a\n", "base");
+        String base = TestRepo.head();
+        TestRepo.run("branch", "other");
+        assertEquals("A branch with that name already exists.\n",
+                TestRepo.run("branch", "other"));
+        TestRepo.commit("b.txt", "b\n", "more");
+        TestRepo.run("checkout", "other");
+        assertEquals("other", TestRepo.branch());
+        assertEquals(base, TestRepo.head());
+        assertFalse(TestRepo.exists("b.txt"));
+        assertEquals("Cannot remove the current branch.\n",
+                TestRepo.run("rm-branch", "other"));
+        TestRepo.run("checkout", "master");
+        assertEquals("b\n", TestRepo.read("b.txt"));
+        TestRepo.run("rm-branch", "other");
+        assertEquals("No such branch exists.\n",
+                TestRepo.run("checkout", "other"));
+        TestRepo.run("reset", base);
+        assertEquals("master", TestRepo.branch());
+        assertEquals(base, TestRepo.head());
+        assertFalse(TestRepo.exists("b.txt"));
+    }
+    /** A file is not staged at the name of a directory of tracked
+     *  files, nor below a tracked file, until those are removed. **/
+    @Test
+    public void fileOverDirectory() throws Exception {
+        TestRepo.commit("d/a.txt", "a\n", "dir");
+        TestRepo.commit("d/b.txt", "b\n", "more");
+        TestRepo.commit("f", "f\n", "file");
+        Utils.join(TestRepo.DIR, "d", "a.txt").delete();
+        Utils.join(TestRepo.DIR, "d", "b.txt").delete();
+        Utils.join(TestRepo.DIR, "d").delete();
+        TestRepo.write("d", "now a file\n");
+        assertEquals("There is a tracked file in the way of d;"
+                + " remove it first.\n", TestRepo.run("add", "d"));
+        TestRepo.run("rm", "d/a.txt");
+        assertEquals("There is a tracked file in the way of d;"
+                + " remove it first.\n", TestRepo.run("add", "d"));
+        TestRepo.run("rm", "d/b.txt");
+        assertEquals("", TestRepo.run("add", "d"));
+        TestRepo.run("commit", "file over dir");
+        Utils.join(TestRepo.DIR, "f").delete();
+        TestRepo.write("f/x", "now a dir\n");
+        assertEquals("There is a tracked file in the way of f/x;"
+                + " remove it first.\n", TestRepo.run("add", "f/x"));
+        assertEquals("", TestRepo.run("add", "-A"));
+        TestRepo.run("commit", "dir over file");
+        TestRepo.run("checkout", "--", "d");
+        assertEquals("now a file\n", TestRepo.read("d"));
+        assertEquals("now a dir\n", TestRepo.read("f/x"));
+        assertTrue(TestRepo.run("status").endsWith(
+                "=== Untracked Files ===\n\n"));
+    }
+}
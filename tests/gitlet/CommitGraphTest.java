@@ -0,0 +1,137 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of CommitGraph: ancestry and merge bases over histories with
+ *  merges, read back from the graph's file.
+ *  @author Adam
+ */
+public class CommitGraphTest {
+    /** Directory each test keeps its graph in. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** File the graph is kept in. **/
+    private File _file;
+    /** The graph, written to _file. **/
+    private CommitGraph _graph;
+    /** Time of the next commit made. **/
+    private long _time = 1000;
+
+    /** Opens an empty graph. **/
+    @Before
+    public void setUp() throws IOException {
+        _file = new File(dir.getRoot(), "commit-graph");
+        _graph = new CommitGraph(_file, true);
+    }
+
+    /** Every parent of a merge is followed, and nothing is an ancestor
+     *  of its own ancestors or of commits on another line. **/
+    @Test
+    public void ancestry() throws IOException {
+        String root = commit();
+        String left = commit(root);
+        String right = commit(root);
+        String merge = commit(left, right);
+        String after = commit(left);
+        assertTrue(_graph.isAncestor(root, merge));
+        assertTrue(_graph.isAncestor(left, merge));
+        assertTrue(_graph.isAncestor(right, merge));
+        assertTrue(_graph.isAncestor(merge, merge));
+        assertFalse(_graph.isAncestor(merge, left));
+        assertFalse(_graph.isAncestor(right, after));
+        assertFalse(_graph.isAncestor(after, merge));
+    }
+    /** The merge base of two lines that split is where they split, and
+     *  of a commit and its ancestor is the ancestor. **/
+    @Test
+    public void diamond() throws IOException {
+        String root = commit();
+        String base = commit(root);
+        String left = commit(commit(base));
+        String right = commit(base);
+        assertEquals(base, _graph.mergeBase(left, right));
+        assertEquals(base, _graph.mergeBase(right, left));
+        assertEquals(root, _graph.mergeBase(root, left));
+        String merge = commit(left, right);
+        assertEquals(right, _graph.mergeBase(merge, right));
+    }
+    /** Of the two bases of lines merged into each other, either is a
+     *  lowest common ancestor, and their own base is not. **/
+    @Test
+    public void crissCross() throws IOException {
+        String root = commit();
+        String a = commit(root);
+        String b = commit(root);
+        String left = commit(a, b);
+        String right = commit(b, a);
+        String base = _graph.mergeBase(commit(left), commit(right));
+        assertTrue(List.of(a, b).contains(base));
+    }
+    /** Lines with no common commit have no merge base. **/
+    @Test
+    public void unrelated() throws IOException {
+        String one = commit(commit());
+        String two = commit(commit());
+        assertNull(_graph.mergeBase(one, two));
+        assertFalse(_graph.isAncestor(one, two));
+    }
+    /** A graph opened again from its file answers as before, and one
+     *  opened read-only keeps what it adds out of the file. **/
+    @Test
+    public void reopen() throws IOException {
+        String root = commit();
+        String left = commit(root);
+        String right = commit(root);
+        String merge = commit(left, right);
+        CommitGraph read = new CommitGraph(_file, false);
+        assertEquals(4, read.size());
+        assertEquals(merge, read.id(3));
+        assertTrue(read.isAncestor(right, merge));
+        assertEquals(root, read.mergeBase(left, right));
+        read.append(new CommitRecord(_time++, null, "more",
+                Tree.EMPTY.getSha1(), merge));
+        assertEquals(5, read.size());
+        assertEquals(4, new CommitGraph(_file, true).size());
+    }
+    /** A record whose generation does not follow from its parents, as a
+     *  torn write leaves, is cut from the file with those after it. **/
+    @Test
+    public void torn() throws IOException {
+        String root = commit();
+        commit(commit(root));
+        long length = _file.length();
+        try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+            file.seek(length - 12);
+            file.writeInt(7);
+        }
+        CommitGraph read = new CommitGraph(_file, true);
+        assertEquals(2, read.size());
+        assertEquals(length / 3 * 2, _file.length());
+        assertTrue(read.contains(root));
+    }
+
+    /** Adds to the graph a commit with PARENTS and returns its id.
+     * @param parents parents
+     * @return String
+     **/
+    private String commit(String... parents) throws IOException {
+        CommitRecord commit = new CommitRecord(_time++, null,
+                "commit " + _time, Tree.EMPTY.getSha1(), parents);
+        _graph.append(commit);
+        return commit.getSha1();
+    }
+}
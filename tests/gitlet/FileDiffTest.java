@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of FileDiff: unified diffs and three-way merges, copied out as
+ *  raw bytes. Texts here are given one char per byte, so a char from
+ *  0x80 to 0xff is that byte, whatever it would mean as UTF-8.
+ *  @author Adam
+ */
+public class FileDiffTest {
+    /** The header of a diff of path p. **/
+    private static final String HEADER =
+            "diff --gitlet a/p b/p\n--- a/p\n+++ b/p\n";
+
+    /** A changed line is shown with its context. **/
+    @Test
+    public void change() throws IOException {
+        assertEquals(HEADER + "@@ -1,3 +1,3 @@\n a\n-b\n+B\n c\n",
+                diff("a\nb\nc\n", "a\nB\nc\n"));
+    }
+    /** Bytes from 0x80 up, as in UTF-8 text or in text that is not
+     *  UTF-8 at all, are copied out unchanged. **/
+    @Test
+    public void highBytes() throws IOException {
+        assertEquals(HEADER + "@@ -1,2 +1,2 @@\n one\n"
+                + "-caf\u00c3\u00a9\n+caf\u00e9\u00ff\n",
+                diff("one\ncaf\u00c3\u00a9\n", "one\ncaf\u00e9\u00ff\n"));
+    }
+    /** Changes far apart are shown in hunks of their own. **/
+    @Test
+    public void hunks() throws IOException {
+        StringBuilder old = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            old.append('l').append(i).append('\n');
+        }
+        String now = old.toString().replace("l2\n", "two\n")
+                .replace("l17\n", "seventeen\n");
+        assertEquals(HEADER
+                + "@@ -1,6 +1,6 @@\n l0\n l1\n-l2\n+two\n l3\n l4\n l5\n"
+                + "@@ -15,6 +15,6 @@\n l14\n l15\n l16\n-l17\n"
+                + "+seventeen\n l18\n l19\n",
+                diff(old.toString(), now));
+    }
+    /** A last line with no terminator is marked. **/
+    @Test
+    public void noNewline() throws IOException {
+        assertEquals(HEADER + "@@ -1 +1 @@\n-a\n+a\n"
+                + "\\ No newline at end of file\n", diff("a\n", "a"));
+    }
+    /** A file that did not exist is diffed against /dev/null. **/
+    @Test
+    public void created() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileDiff.write("p", null, source("x\n"), out);
+        assertEquals("diff --gitlet a/p b/p\n--- /dev/null\n+++ b/p\n"
+                + "@@ -0,0 +1 @@\n+x\n", text(out));
+    }
+    /** Versions with a zero byte are only said to differ. **/
+    @Test
+    public void binary() throws IOException {
+        assertEquals(HEADER + "Binary files a/p and b/p differ\n",
+                diff("a\u0000", "b\u0000"));
+    }
+    /** Nothing is written for versions with the same lines. **/
+    @Test
+    public void same() throws IOException {
+        assertEquals("", diff("a\n\u00ff\n", "a\n\u00ff\n"));
+    }
+    /** Changes on different sides merge cleanly, bytes and all. **/
+    @Test
+    public void mergeClean() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(FileDiff.merge(source("a\nb\nc\n"),
+                source("\u00e9\nb\nc\n"), source("a\nb\n\u00ff\n"), out));
+        assertEquals("\u00e9\nb\n\u00ff\n", text(out));
+    }
+    /** A conflicting chunk is written between markers, a side with no
+     *  last line terminator getting one so the marker starts a line. **/
+    @Test
+    public void mergeConflict() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(FileDiff.merge(source("a\nb\n"), source("a\nX"),
+                source("a\nY\n"), out));
+        assertEquals("a\n" + FileDiff.OURS + "X\n" + FileDiff.SPLIT + "Y\n"
+                + FileDiff.THEIRS, text(out));
+    }
+
+    /** Returns the diff of p from OLD to NOW.
+     * @param old old
+     * @param now now
+     * @return String
+     **/
+    private static String diff(String old, String now) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FileDiff.write("p", source(old), source(now), out);
+        return text(out);
+    }
+    /** Returns a version holding the bytes of TEXT.
+     * @param text text
+     * @return FileDiff.Source
+     **/
+    private static FileDiff.Source source(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        return () -> new ByteArrayInputStream(bytes);
+    }
+    /** Returns what was written to OUT, one char per byte.
+     * @param out out
+     * @return String
+     **/
+    private static String text(ByteArrayOutputStream out) {
+        return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
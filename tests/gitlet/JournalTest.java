@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of Journal: committing updates, and replaying a journal left
+ *  by a command that did not finish applying it.
+ *  @author Adam
+ */
+public class JournalTest {
+    /** Directory each test's files lie below. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** Updates are seen by reads before the commit, and are on disk
+     *  after it, with no journal left. **/
+    @Test
+    public void commit() throws IOException {
+        File root = dir.getRoot();
+        File head = new File(root, "HEAD");
+        File old = new File(root, "old");
+        write(head, "master");
+        write(old, "gone");
+        Journal journal = new Journal(root, new Locks());
+        journal.update(head, bytes("other"));
+        journal.update(old, null);
+        assertTrue(journal.isPending(head));
+        assertEquals("other", new String(journal.pending(head),
+                StandardCharsets.UTF_8));
+        assertEquals("master", read(head));
+        journal.commit();
+        assertFalse(journal.isPending(head));
+        assertEquals("other", read(head));
+        assertFalse(old.exists());
+        assertTrue(noJournal(root));
+    }
+    /** Updates dropped by abort are never applied. **/
+    @Test
+    public void abort() throws IOException {
+        File root = dir.getRoot();
+        File head = new File(root, "HEAD");
+        write(head, "master");
+        Journal journal = new Journal(root, new Locks());
+        journal.update(head, bytes("other"));
+        journal.abort();
+        journal.commit();
+        assertEquals("master", read(head));
+        assertNull(journal.pending(head));
+    }
+    /** A journal left behind is replayed when the repo is opened: each
+     *  file is given its new contents or deleted, directories are made
+     *  as needed, and the journal is deleted. **/
+    @Test
+    public void replay() throws IOException {
+        File root = dir.getRoot();
+        File head = new File(root, "HEAD");
+        File old = new File(root, "old");
+        File ref = Utils.join(root, "refs", "heads", "topic");
+        write(head, "master");
+        write(old, "gone");
+        File left = new File(root, "journal-1");
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(left))) {
+            out.writeInt(3);
+            MetaStore.writeString(out, "HEAD");
+            out.writeInt(5);
+            out.write(bytes("topic"));
+            MetaStore.writeString(out, "old");
+            out.writeInt(-1);
+            MetaStore.writeString(out, "refs/heads/topic");
+            out.writeInt(2);
+            out.write(bytes("id"));
+        }
+        new Journal(root, new Locks()).recover();
+        assertEquals("topic", read(head));
+        assertFalse(old.exists());
+        assertEquals("id", read(ref));
+        assertFalse(left.exists());
+    }
+    /** A journal whose files another command holds locked is left for
+     *  that command to apply. **/
+    @Test
+    public void replayLocked() throws IOException {
+        File root = dir.getRoot();
+        File head = new File(root, "HEAD");
+        write(head, "master");
+        File left = new File(root, "journal-1");
+        try (DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(left))) {
+            out.writeInt(1);
+            MetaStore.writeString(out, "HEAD");
+            out.writeInt(5);
+            out.write(bytes("topic"));
+        }
+        Locks other = new Locks();
+        other.lock(head);
+        try {
+            new Journal(root, new Locks()).recover();
+        } finally {
+            other.unlock(head);
+        }
+        assertEquals("master", read(head));
+        assertTrue(left.exists());
+    }
+
+    /** Returns TEXT in UTF-8.
+     * @param text text
+     * @return byte[]
+     **/
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+    /** Writes TEXT to FILE.
+     * @param file file
+     * @param text text
+     **/
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), bytes(text));
+    }
+    /** Returns the contents of FILE.
+     * @param file file
+     * @return String
+     **/
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+    }
+    /** Returns true if no journal is left in ROOT.
+     * @param root root
+     * @return boolean
+     **/
+    private static boolean noJournal(File root) {
+        for (String name : Utils.plainFilenamesIn(root)) {
+            if (name.startsWith("journal-")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
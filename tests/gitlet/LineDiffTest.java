@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of LineDiff: matching two sequences and merging three.
+ *  @author Adam
+ */
+public class LineDiffTest {
+    /** A small match, with an insertion and a deletion. **/
+    @Test
+    public void match() {
+        assertArrayEquals(new int[] {0, -1, 1, 2},
+                LineDiff.match(new int[] {1, 2, 3, 4},
+                        new int[] {1, 3, 4, 5}));
+        assertArrayEquals(new int[] {}, LineDiff.match(new int[] {},
+                new int[] {1}));
+        assertArrayEquals(new int[] {-1, -1}, LineDiff.match(
+                new int[] {1, 2}, new int[] {}));
+    }
+    /** On random sequences, the match pairs equal elements in order and
+     *  is as long as a longest common subsequence. **/
+    @Test
+    public void matchIsLongest() {
+        Random random = new Random(0);
+        for (int trial = 0; trial < 200; trial++) {
+            int[] a = random(random, random.nextInt(40), 5);
+            int[] b = random(random, random.nextInt(40), 5);
+            int[] matches = LineDiff.match(a, b);
+            int count = 0;
+            int last = -1;
+            for (int i = 0; i < a.length; i++) {
+                if (matches[i] >= 0) {
+                    assertTrue(matches[i] > last);
+                    assertEquals(a[i], b[matches[i]]);
+                    last = matches[i];
+                    count += 1;
+                }
+            }
+            assertEquals(lcs(a, b), count);
+        }
+    }
+    /** Joining the lines of a text gives the text back. **/
+    @Test
+    public void lines() {
+        assertEquals(List.of("a\n", "b\n", "c"), LineDiff.lines("a\nb\nc"));
+        assertEquals(List.of(), LineDiff.lines(""));
+    }
+    /** A chunk changed on one side only takes that side. **/
+    @Test
+    public void mergeOneSide() throws Exception {
+        Recorder merged = merge("a\nb\nc\n", "a\nB\nc\n", "a\nb\nc\nd\n");
+        assertFalse(merged._conflicted);
+        assertEquals("a\nB\nc\nd\n", merged.text());
+    }
+    /** A chunk changed the same way on both sides takes either. **/
+    @Test
+    public void mergeSameChange() throws Exception {
+        Recorder merged = merge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n");
+        assertFalse(merged._conflicted);
+        assertEquals("a\nB\nc\n", merged.text());
+    }
+    /** A chunk changed differently on both sides conflicts, and the
+     *  conflict covers only that chunk. **/
+    @Test
+    public void mergeConflict() throws Exception {
+        Recorder merged = merge("a\nb\nc\nd\ne\n", "a\nX\nc\nd\nE\n",
+                "a\nY\nc\nd\ne\n");
+        assertTrue(merged._conflicted);
+        assertEquals("a\n<X\n|Y\n>c\nd\nE\n", merged.text());
+    }
+    /** Both sides adding different lines to an empty base conflict. **/
+    @Test
+    public void mergeFromNothing() throws Exception {
+        Recorder merged = merge("", "a\n", "b\n");
+        assertTrue(merged._conflicted);
+        assertEquals("<a\n|b\n>", merged.text());
+    }
+
+    /** Returns the merge of OURS and THEIRS, both changed from BASE.
+     * @param base base
+     * @param ours ours
+     * @param theirs theirs
+     * @return Recorder
+     **/
+    private static Recorder merge(String base, String ours, String theirs)
+            throws Exception {
+        Recorder out = new Recorder(base, ours, theirs);
+        HashMap<String, Integer> ids = new HashMap<>();
+        out._conflicted = LineDiff.merge(LineDiff.intern(out._o, ids),
+                LineDiff.intern(out._a, ids), LineDiff.intern(out._b, ids),
+                out);
+        return out;
+    }
+    /** Returns LENGTH random ints below RANGE from RANDOM.
+     * @param random random
+     * @param length length
+     * @param range range
+     * @return int[]
+     **/
+    private static int[] random(Random random, int length, int range) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = random.nextInt(range);
+        }
+        return result;
+    }
+    /** Returns the length of a longest common subsequence of A and B.
+     * @param a a
+     * @param b b
+     * @return int
+     **/
+    private static int lcs(int[] a, int[] b) {
+        int[][] length = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i--) {
+            for (int j = b.length - 1; j >= 0; j--) {
+                length[i][j] = a[i] == b[j] ? length[i + 1][j + 1] + 1
+                        : Math.max(length[i + 1][j], length[i][j + 1]);
+            }
+        }
+        return length[0][0];
+    }
+
+    /** Writes out the chunks of a merge as text, a conflict as "<",
+     *  our lines, "|", their lines and ">". **/
+    private static final class Recorder implements LineDiff.Merged {
+        /** Lines of the base. **/
+        private final List<String> _o;
+        /** Lines of our version. **/
+        private final List<String> _a;
+        /** Lines of their version. **/
+        private final List<String> _b;
+        /** The merged text. **/
+        private final StringBuilder _text = new StringBuilder();
+        /** True if the merge conflicted. **/
+        private boolean _conflicted;
+
+        /** A recorder of the merge of OURS and THEIRS from BASE.
+         * @param base base
+         * @param ours ours
+         * @param theirs theirs
+         **/
+        Recorder(String base, String ours, String theirs) {
+            _o = LineDiff.lines(base);
+            _a = LineDiff.lines(ours);
+            _b = LineDiff.lines(theirs);
+        }
+        /** Returns the merged text. **/
+        String text() {
+            return _text.toString();
+        }
+        @Override
+        public void base(int from, int to) {
+            copy(_o, from, to);
+        }
+        @Override
+        public void ours(int from, int to) {
+            copy(_a, from, to);
+        }
+        @Override
+        public void theirs(int from, int to) {
+            copy(_b, from, to);
+        }
+        @Override
+        public void conflict(int aFrom, int aTo, int bFrom, int bTo) {
+            _text.append('<');
+            copy(_a, aFrom, aTo);
+            _text.append('|');
+            copy(_b, bFrom, bTo);
+            _text.append('>');
+        }
+        /** Appends lines [FROM, TO) of LINES.
+         * @param lines lines
+         * @param from from
+         * @param to to
+         **/
+        private void copy(List<String> lines, int from, int to) {
+            for (String line : lines.subList(from, to)) {
+                _text.append(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of the merge command, run as Main runs it.
+ *  @author Adam
+ */
+public class MergeTest {
+    /** Starts each test in a new repo with one commit on master. **/
+    @Before
+    public void setUp() throws Exception {
+        TestRepo.clear();
+        TestRepo.run("init");
+        TestRepo.commit("a.txt", "a\nb\nc\n", "base");
+    }
+
+    /** Merging a branch ahead of the current one moves the current
+     *  branch to it and leaves HEAD on the current branch. **/
+    @Test
+    public void fastForwardBranch() throws Exception {
+        TestRepo.run("branch", "ff");
+        TestRepo.commit("b.txt", "new\n", "ahead");
+        String ahead = TestRepo.head();
+        TestRepo.run("checkout", "ff");
+        assertFalse(TestRepo.exists("b.txt"));
+        assertEquals("Current branch fast-forwarded.\n",
+                TestRepo.run("merge", "master"));
+        assertEquals("ff", TestRepo.branch());
+        assertEquals(ahead, TestRepo.head());
+        assertEquals("new\n", TestRepo.read("b.txt"));
+        TestRepo.run("checkout", "master");
+        assertEquals(ahead, TestRepo.head());
+    }
+    /** Merging a commit ahead of the current one, named by its id, moves
+     *  the current branch to it. **/
+    @Test
+    public void fastForwardId() throws Exception {
+        TestRepo.run("branch", "ff");
+        TestRepo.commit("b.txt", "new\n", "ahead");
+        String ahead = TestRepo.head();
+        TestRepo.run("checkout", "ff");
+        assertEquals("Current branch fast-forwarded.\n",
+                TestRepo.run("merge", ahead.substring(0, 8)));
+        assertEquals("ff", TestRepo.branch());
+        assertEquals(ahead, TestRepo.head());
+    }
+    /** Merging an ancestor changes nothing. **/
+    @Test
+    public void ancestor() throws Exception {
+        TestRepo.run("branch", "old");
+        TestRepo.commit("b.txt", "new\n", "ahead");
+        String ahead = TestRepo.head();
+        assertEquals("Given branch is an ancestor of the current branch.\n",
+                TestRepo.run("merge", "old"));
+        assertEquals(ahead, TestRepo.head());
+    }
+    /** Changes to different lines and files on each side are merged into
+     *  a merge commit with both tips as parents. **/
+    @Test
+    public void clean() throws Exception {
+        TestRepo.run("branch", "other");
+        TestRepo.commit("a.txt", "A\nb\nc\n", "ours");
+        String ours = TestRepo.head();
+        TestRepo.run("checkout", "other");
+        TestRepo.commit("a.txt", "a\nb\nC\n", "theirs");
+        TestRepo.commit("c.txt", "c\n", "more");
+        String theirs = TestRepo.head();
+        TestRepo.run("checkout", "master");
+        assertEquals("", TestRepo.run("merge", "other"));
+        assertEquals("A\nb\nC\n", TestRepo.read("a.txt"));
+        assertEquals("c\n", TestRepo.read("c.txt"));
+        String log = TestRepo.run("log", "-n", "1");
+        assertTrue(log.contains("Merge: " + ours.substring(0, 7) + " "
+                + theirs.substring(0, 7)));
+        assertTrue(log.contains("Merged other into master."));
+        assertTrue(TestRepo.run("status").contains(
+                "=== Staged Files ===\n\n"));
+    }
+    /** Lines changed differently on each side are written between
+     *  conflict markers, and the merge is still committed. **/
+    @Test
+    public void conflict() throws Exception {
+        TestRepo.run("branch", "other");
+        TestRepo.commit("a.txt", "a\nX\nc\n", "ours");
+        TestRepo.run("checkout", "other");
+        TestRepo.commit("a.txt", "a\nY\nc\n", "theirs");
+        TestRepo.run("checkout", "master");
+        assertEquals("Encountered a merge conflict.\n",
+                TestRepo.run("merge", "other"));
+        assertEquals("a\n" + FileDiff.OURS + "X\n" + FileDiff.SPLIT + "Y\n"
+                + FileDiff.THEIRS + "c\n", TestRepo.read("a.txt"));
+        assertTrue(TestRepo.run("log", "-n", "1")
+                .contains("Merged other into master."));
+    }
+    /** A merge is refused while changes are staged, or while an
+     *  untracked file would be overwritten. **/
+    @Test
+    public void refused() throws Exception {
+        TestRepo.run("branch", "other");
+        TestRepo.run("checkout", "other");
+        TestRepo.commit("b.txt", "theirs\n", "theirs");
+        TestRepo.run("checkout", "master");
+        TestRepo.commit("a.txt", "changed\n", "ours");
+        TestRepo.write("b.txt", "untracked\n");
+        assertEquals("There is an untracked file in the way; delete it,"
+                + " or add and commit it first.\n",
+                TestRepo.run("merge", "other"));
+        assertEquals("untracked\n", TestRepo.read("b.txt"));
+        TestRepo.run("add", "b.txt");
+        assertEquals("You have uncommitted changes.\n",
+                TestRepo.run("merge", "other"));
+        TestRepo.run("rm", "b.txt");
+        assertEquals("Cannot merge a branch with itself.\n",
+                TestRepo.run("merge", "master"));
+    }
+}
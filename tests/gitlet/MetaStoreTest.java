@@ -0,0 +1,210 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of MetaStore: what it writes is what a store opened later
+ *  reads, and the commit graph follows the commit log through crashes.
+ *  @author Adam
+ */
+public class MetaStoreTest {
+    /** Directory each test keeps its store in. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** Time of the next commit made. **/
+    private long _time = 1000;
+
+    /** A commit reads back, from a store opened later, with every field
+     *  it was written with. **/
+    @Test
+    public void commitRoundTrip() throws IOException {
+        MetaStore store = writer();
+        String root = commit(store, "root");
+        String side = commit(store, "side", root);
+        CommitRecord merge = new CommitRecord(_time++, "Ada",
+                "Merged side into master. \u00e9\u4e2d", Tree.EMPTY.getSha1(),
+                root, side);
+        store.appendCommit(merge);
+        store.commit();
+        store.unlock();
+        MetaStore read = new MetaStore(dir.getRoot());
+        CommitRecord back = read.readCommit(merge.getSha1());
+        assertEquals(merge.getSha1(), back.getSha1());
+        assertEquals(merge.getTime(), back.getTime());
+        assertEquals("Ada", back.getAuthor());
+        assertEquals(merge.getMsg(), back.getMsg());
+        assertEquals(Tree.EMPTY.getSha1(), back.getTree());
+        assertEquals(List.of(root, side), back.getMergeParents());
+        assertNull(read.readCommit(root).getAuthor());
+        assertTrue(read.readCommit(root).getMergeParents().isEmpty());
+        assertNull(read.readCommit(Utils.sha1("missing")));
+        List<String> ids = new ArrayList<>();
+        read.commitIds().forEach(ids::add);
+        assertEquals(List.of(root, side, merge.getSha1()), ids);
+        assertEquals(List.of(side), read.resolveCommit(side.substring(0, 8)));
+        assertTrue(read.resolveCommit(side.substring(0, 3)).isEmpty());
+    }
+    /** A tree reads back, from a store opened later, with its entries. **/
+    @Test
+    public void treeRoundTrip() throws IOException {
+        TreeMap<String, Tree.Entry> sub = new TreeMap<>();
+        sub.put("b.txt", new Tree.Entry(false, Utils.sha1("b")));
+        Tree inner = new Tree(sub);
+        TreeMap<String, Tree.Entry> top = new TreeMap<>();
+        top.put("a.txt", new Tree.Entry(false, Utils.sha1("a")));
+        top.put("dir", new Tree.Entry(true, inner.getSha1()));
+        Tree outer = new Tree(top);
+        MetaStore store = new MetaStore(dir.getRoot());
+        store.appendTree(inner);
+        store.appendTree(outer);
+        store.commit();
+        Tree back = new MetaStore(dir.getRoot()).readTree(outer.getSha1());
+        assertEquals(outer.getSha1(), back.getSha1());
+        assertEquals(top.keySet(), back.entries().keySet());
+        assertTrue(back.entries().get("dir").isTree());
+        assertEquals(inner.getSha1(), back.entries().get("dir").id());
+        assertEquals(Utils.sha1("a"), back.entries().get("a.txt").id());
+    }
+    /** HEAD, refs and the staging index are seen by the command that
+     *  changed them at once, and by a store opened later only once the
+     *  command commits. **/
+    @Test
+    public void reopen() throws IOException {
+        String id = chain(writer(), 1)[0];
+        MetaStore store = new MetaStore(dir.getRoot());
+        store.writeHead("topic");
+        store.writeRef("topic", id);
+        HashMap<String, String> staged = new HashMap<>();
+        staged.put("a.txt", Utils.sha1("a"));
+        store.writeIndex(staged, List.of("gone.txt"), new StatCache());
+        assertEquals("topic", store.readHead());
+        assertEquals(id, store.readRef("topic"));
+        MetaStore other = new MetaStore(dir.getRoot());
+        assertNull(other.readRef("topic"));
+        assertFalse(MetaStore.exists(dir.getRoot()));
+        store.commit();
+        store.unlock();
+        MetaStore read = new MetaStore(dir.getRoot());
+        assertTrue(MetaStore.exists(dir.getRoot()));
+        assertEquals("topic", read.readHead());
+        assertEquals(id, read.readRef("topic"));
+        assertEquals(Map.of("topic", id), read.readRefs());
+        HashMap<String, String> readStaged = new HashMap<>();
+        ArrayList<String> readRemoved = new ArrayList<>();
+        read.readIndex(readStaged, readRemoved, new StatCache());
+        assertEquals(staged, readStaged);
+        assertEquals(List.of("gone.txt"), readRemoved);
+    }
+    /** Updates of a command that fails are dropped. **/
+    @Test
+    public void abort() throws IOException {
+        String id = chain(writer(), 1)[0];
+        MetaStore store = new MetaStore(dir.getRoot());
+        store.writeHead("master");
+        store.writeRef("master", id);
+        store.commit();
+        store.unlock();
+        store = new MetaStore(dir.getRoot());
+        store.writeRef("other", id);
+        store.writeHead("other");
+        store.abort();
+        MetaStore read = new MetaStore(dir.getRoot());
+        assertEquals("master", read.readHead());
+        assertNull(read.readRef("other"));
+    }
+    /** Commits missing from the end of the graph are added back from
+     *  the log when the graph is opened. **/
+    @Test
+    public void graphCatchesUp() throws IOException {
+        String[] ids = chain(writer(), 3);
+        File graph = new File(dir.getRoot(), "commit-graph");
+        try (RandomAccessFile file = new RandomAccessFile(graph, "rw")) {
+            file.setLength(file.length() / 3);
+        }
+        CommitGraph read = new MetaStore(dir.getRoot()).graph();
+        assertEquals(3, read.size());
+        assertTrue(read.isAncestor(ids[0], ids[2]));
+        assertFalse(read.isAncestor(ids[2], ids[0]));
+    }
+    /** A graph naming a commit a crash cut from the log is built again
+     *  from the log. **/
+    @Test
+    public void graphRebuiltAfterLogCut() throws IOException {
+        String[] ids = chain(writer(), 3);
+        File log = new File(dir.getRoot(), "commits.dat");
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+        MetaStore store = new MetaStore(dir.getRoot());
+        store.recover();
+        CommitGraph read = store.graph();
+        assertEquals(2, read.size());
+        assertFalse(read.contains(ids[2]));
+        assertTrue(read.isAncestor(ids[0], ids[1]));
+        assertEquals(2, store.search().size());
+    }
+    /** A deleted graph is built again from the log. **/
+    @Test
+    public void graphRebuiltWhenMissing() throws IOException {
+        String[] ids = chain(writer(), 3);
+        new File(dir.getRoot(), "commit-graph").delete();
+        CommitGraph read = new MetaStore(dir.getRoot()).graph();
+        assertEquals(3, read.size());
+        assertTrue(read.isAncestor(ids[1], ids[2]));
+    }
+
+    /** Returns a store in the test's directory that writes the commit
+     *  graph, holding an empty tree for commits to name. **/
+    private MetaStore writer() throws IOException {
+        MetaStore store = new MetaStore(dir.getRoot());
+        store.appendTree(Tree.EMPTY);
+        store.lockGraph();
+        return store;
+    }
+    /** Appends to STORE, and commits, a chain of N commits, each the
+     *  parent of the next, and returns their ids, oldest first.
+     * @param store store
+     * @param n n
+     * @return String[]
+     **/
+    private String[] chain(MetaStore store, int n) throws IOException {
+        String[] ids = new String[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = commit(store, "commit " + i,
+                    i == 0 ? new String[0] : new String[] {ids[i - 1]});
+        }
+        store.commit();
+        store.unlock();
+        return ids;
+    }
+    /** Appends to STORE a commit with message MSG and PARENTS, naming
+     *  the empty tree, and returns its id.
+     * @param store store
+     * @param msg msg
+     * @param parents parents
+     * @return String
+     **/
+    private String commit(MetaStore store, String msg, String... parents)
+            throws IOException {
+        CommitRecord commit = new CommitRecord(_time++, null, msg,
+                Tree.EMPTY.getSha1(), parents);
+        store.appendCommit(commit);
+        return commit.getSha1();
+    }
+}
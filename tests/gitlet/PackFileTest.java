@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of PackFile: every blob written into a pack, whole or as a
+ *  delta, reads back as it was.
+ *  @author Adam
+ */
+public class PackFileTest {
+    /** Directory each test keeps its pack in. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** Contents of each blob by id. **/
+    private final HashMap<String, byte[]> _blobs = new HashMap<>();
+
+    /** Versions of a path, blobs of no path and a blob of binary bytes
+     *  all read back from the pack, under every codec. **/
+    @Test
+    public void roundTrip() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        String v1 = blob(text.toString());
+        String v2 = blob(text.toString().replace("line 50\n", "fifty\n"));
+        String v3 = blob(text.append("the end\n").toString());
+        String other = blob("another path\n");
+        byte[] random = new byte[10000];
+        new Random(0).nextBytes(random);
+        String binary = blob(random);
+        String empty = blob("");
+        for (Codec codec : Codec.values()) {
+            PackFile.write(dir.getRoot(),
+                    Map.of("a.txt", List.of(v1, v2, v3),
+                            "b.txt", List.of(other)),
+                    List.of(binary, empty), this::open, codec);
+            PackFile pack = PackFile.open(dir.getRoot());
+            try {
+                for (Map.Entry<String, byte[]> blob : _blobs.entrySet()) {
+                    assertTrue(pack.contains(blob.getKey()));
+                    assertArrayEquals(blob.getValue(),
+                            pack.read(blob.getKey()));
+                }
+                String[] ids = pack.ids();
+                Arrays.sort(ids);
+                String[] expected = _blobs.keySet().toArray(new String[0]);
+                Arrays.sort(expected);
+                assertArrayEquals(expected, ids);
+                String missing = Utils.sha1("missing");
+                assertFalse(pack.contains(missing));
+                assertNull(pack.read(missing));
+            } finally {
+                pack.close();
+            }
+        }
+    }
+    /** A new pack replaces the one before it. **/
+    @Test
+    public void replace() throws IOException {
+        String first = blob("first\n");
+        PackFile.write(dir.getRoot(), Map.of(), List.of(first), this::open,
+                Codec.DEFLATE);
+        String second = blob("second\n");
+        PackFile.write(dir.getRoot(), Map.of(), List.of(second),
+                this::open, Codec.DEFLATE);
+        PackFile pack = PackFile.open(dir.getRoot());
+        try {
+            assertEquals(1, pack.ids().length);
+            assertFalse(pack.contains(first));
+            assertEquals("second\n", new String(pack.read(second),
+                    StandardCharsets.UTF_8));
+        } finally {
+            pack.close();
+        }
+        File[] files = dir.getRoot().listFiles();
+        assertEquals(1, files.length);
+    }
+    /** There is no pack in a directory none was written to. **/
+    @Test
+    public void noPack() throws IOException {
+        assertNull(PackFile.open(dir.getRoot()));
+    }
+
+    /** Adds a blob of TEXT and returns its id.
+     * @param text text
+     * @return String
+     **/
+    private String blob(String text) {
+        return blob(text.getBytes(StandardCharsets.UTF_8));
+    }
+    /** Adds a blob of CONTENTS and returns its id.
+     * @param contents contents
+     * @return String
+     **/
+    private String blob(byte[] contents) {
+        String id = Utils.sha1(contents);
+        _blobs.put(id, contents);
+        return id;
+    }
+    /** Returns a stream of the contents of blob ID.
+     * @param id id
+     * @return ByteArrayInputStream
+     **/
+    private ByteArrayInputStream open(String id) {
+        return new ByteArrayInputStream(_blobs.get(id));
+    }
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of PathMap: adding and removing paths, and leaving the map
+ *  each change was made from as it was.
+ *  @author Adam
+ */
+public class PathMapTest {
+    /** A path is found once added, and not once removed. **/
+    @Test
+    public void withAndWithout() {
+        PathMap map = PathMap.EMPTY.with("a.txt", id(1)).with("b/c", id(2));
+        assertEquals(2, map.size());
+        assertEquals(id(1), map.get("a.txt"));
+        assertEquals(id(2), map.get("b/c"));
+        assertNull(map.get("b"));
+        PathMap removed = map.without("a.txt");
+        assertEquals(1, removed.size());
+        assertFalse(removed.containsKey("a.txt"));
+        assertEquals(id(2), removed.get("b/c"));
+        assertTrue(map.containsKey("a.txt"));
+        assertSame(removed, removed.without("a.txt"));
+    }
+    /** Mapping a path again replaces its id without adding to the size,
+     *  and leaves the map before unchanged. **/
+    @Test
+    public void replace() {
+        PathMap before = PathMap.EMPTY.with("a", id(1));
+        PathMap after = before.with("a", id(2));
+        assertEquals(1, after.size());
+        assertEquals(id(2), after.get("a"));
+        assertEquals(id(1), before.get("a"));
+    }
+    /** Paths whose hash codes are equal are kept apart. **/
+    @Test
+    public void collisions() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        PathMap map = PathMap.EMPTY.with("Aa", id(1)).with("BB", id(2));
+        assertEquals(2, map.size());
+        assertEquals(id(1), map.get("Aa"));
+        assertEquals(id(2), map.get("BB"));
+        map = map.without("Aa");
+        assertEquals(1, map.size());
+        assertNull(map.get("Aa"));
+        assertEquals(id(2), map.get("BB"));
+    }
+    /** Over many random changes, the map holds what a TreeMap given the
+     *  same changes holds. **/
+    @Test
+    public void random() {
+        Random random = new Random(0);
+        TreeMap<String, String> expected = new TreeMap<>();
+        PathMap map = PathMap.EMPTY;
+        for (int i = 0; i < 5000; i++) {
+            String path = "dir" + random.nextInt(10) + "/file"
+                    + random.nextInt(100);
+            if (random.nextInt(3) == 0) {
+                expected.remove(path);
+                map = map.without(path);
+            } else {
+                String id = id(random.nextInt(1000));
+                expected.put(path, id);
+                map = map.with(path, id);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, new HashMap<>(map));
+        assertEquals(expected, map);
+    }
+    /** Applying changes maps each path to its new id, or removes it if
+     *  that is null. **/
+    @Test
+    public void apply() {
+        PathMap map = PathMap.of(Map.of("a", id(1), "b", id(2)));
+        HashMap<String, String> changes = new HashMap<>();
+        changes.put("a", null);
+        changes.put("c", id(3));
+        assertEquals(Map.of("b", id(2), "c", id(3)), map.apply(changes));
+    }
+
+    /** Returns the id of blob N.
+     * @param n n
+     * @return String
+     **/
+    private static String id(int n) {
+        return Utils.sha1("blob " + n);
+    }
+}
@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of RecordLog: appending and reading records, and cutting off
+ *  what a crash left of the last appends.
+ *  @author Adam
+ */
+public class RecordLogTest {
+    /** Directory each test keeps its log in. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** Records are read back by id, in the order they were written. **/
+    @Test
+    public void appendAndRead() throws IOException {
+        RecordLog log = open();
+        for (int i = 0; i < 3; i++) {
+            log.append(id(i), record(i));
+        }
+        assertEquals(3, log.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(log.contains(id(i)));
+            assertArrayEquals(record(i), log.read(id(i)));
+        }
+        int i = 0;
+        for (String id : log.ids()) {
+            assertEquals(id(i), id);
+            i += 1;
+        }
+        assertFalse(log.contains(id(3)));
+    }
+    /** Appending a record already there changes nothing. **/
+    @Test
+    public void appendTwice() throws IOException {
+        RecordLog log = open();
+        log.append(id(0), record(0));
+        log.append(id(0), record(1));
+        assertEquals(1, log.size());
+        assertArrayEquals(record(0), open().read(id(0)));
+    }
+    /** A record cut short by a crash is dropped with its entry, and the
+     *  records before it are kept. **/
+    @Test
+    public void recoverTruncatedRecord() throws IOException {
+        RecordLog log = open();
+        for (int i = 0; i < 3; i++) {
+            log.append(id(i), record(i));
+        }
+        File data = new File(dir.getRoot(), "data");
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+        RecordLog recovered = open();
+        recovered.recover();
+        assertEquals(2, recovered.size());
+        assertArrayEquals(record(1), recovered.read(id(1)));
+        assertFalse(recovered.contains(id(2)));
+        recovered.append(id(2), record(2));
+        assertArrayEquals(record(2), open().read(id(2)));
+    }
+    /** A partial index entry is dropped. **/
+    @Test
+    public void recoverPartialEntry() throws IOException {
+        RecordLog log = open();
+        log.append(id(0), record(0));
+        try (FileOutputStream index = new FileOutputStream(
+                new File(dir.getRoot(), "index"), true)) {
+            index.write(new byte[] {1, 2, 3});
+        }
+        RecordLog recovered = open();
+        recovered.recover();
+        assertEquals(1, recovered.size());
+        assertArrayEquals(record(0), recovered.read(id(0)));
+    }
+
+    /** Returns a log kept in the test's directory. **/
+    private RecordLog open() {
+        File root = dir.getRoot();
+        Locks locks = new Locks();
+        return new RecordLog(new File(root, "data"),
+                new File(root, "index"), new File(root, "sorted"),
+                new Journal(root, locks), locks);
+    }
+    /** Returns the contents of record I.
+     * @param i i
+     * @return byte[]
+     **/
+    private static byte[] record(int i) {
+        return ("record " + i + " ".repeat(i * 10))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+    /** Returns the id of record I.
+     * @param i i
+     * @return String
+     **/
+    private static String id(int i) {
+        return Utils.sha1("record " + i);
+    }
+}
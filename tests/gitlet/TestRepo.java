@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** A repository in a directory of its own that tests run commands in,
+ *  as Main would. Gitlet takes its working directory from user.dir
+ *  when the class is loaded, so the directory is made, and user.dir
+ *  set, before any test touches Gitlet, and is the same for every test
+ *  in the JVM; each test class runs in a JVM of its own, and clear
+ *  empties the directory between tests.
+ *  @author Adam
+ */
+final class TestRepo {
+    /** The working directory. **/
+    static final File DIR = makeDir();
+
+    /** Not instantiable. **/
+    private TestRepo() {
+    }
+
+    /** Makes the working directory and makes it user.dir. **/
+    private static File makeDir() {
+        try {
+            File dir = Files.createTempDirectory("gitlet-test").toFile();
+            System.setProperty("user.dir", dir.getPath());
+            return dir;
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+    /** Deletes everything in the working directory, repo included. **/
+    static void clear() throws IOException {
+        try (Stream<Path> paths = Files.walk(DIR.toPath())) {
+            paths.sorted(Comparator.reverseOrder())
+                    .filter(p -> !p.equals(DIR.toPath()))
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+    /** Runs the command ARGS as Main would and returns what it printed.
+     * @param args args
+     * @return String
+     **/
+    static String run(String... args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true,
+                StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(OutputStream.nullOutputStream());
+        Gitlet git = Main.dispatch(Gitlet.deserialize(Main.REPO), args,
+                out, err);
+        Gitlet.serialize(git, Main.REPO);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+    /** Returns the id of the head commit, as log prints it. **/
+    static String head() throws Exception {
+        String log = run("log", "-n", "1");
+        int start = log.indexOf("commit ") + "commit ".length();
+        return log.substring(start, start + 2 * MetaStore.HASH_BYTES);
+    }
+    /** Returns the name of the current branch, as status prints it. **/
+    static String branch() throws Exception {
+        String status = run("status");
+        int start = status.indexOf('*') + 1;
+        return status.substring(start, status.indexOf('\n', start));
+    }
+    /** Writes TEXT to the working file PATH, making its directories.
+     * @param path path
+     * @param text text
+     **/
+    static void write(String path, String text) throws IOException {
+        File file = Utils.join(DIR, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+    /** Returns the contents of the working file PATH.
+     * @param path path
+     * @return String
+     **/
+    static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Utils.join(DIR, path).toPath()),
+                StandardCharsets.UTF_8);
+    }
+    /** Returns true if the working file PATH exists.
+     * @param path path
+     * @return boolean
+     **/
+    static boolean exists(String path) {
+        return Utils.join(DIR, path).exists();
+    }
+    /** Writes, adds and commits TEXT as PATH with message MSG.
+     * @param path path
+     * @param text text
+     * @param msg msg
+     **/
+    static void commit(String path, String text, String msg)
+            throws Exception {
+        write(path, text);
+        run("add", path);
+        run("commit", msg);
+    }
+}
@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Tests of Tree: changes applied to a tree, as a commit applies what
+ *  is staged, read back as the files they should leave.
+ *  @author Adam
+ */
+public class TreeTest {
+    /** Directory each test keeps its store in. **/
+    @Rule
+    public TemporaryFolder dir = new TemporaryFolder();
+
+    /** The store trees are written to. **/
+    private MetaStore _store;
+    /** A tree holding a.txt, d/b.txt and d/e/c.txt. **/
+    private String _base;
+
+    /** Writes the base tree. **/
+    @Before
+    public void setUp() throws IOException {
+        _store = new MetaStore(dir.getRoot());
+        _base = Tree.apply(_store, null, changes(
+                "a.txt", "a", "d/b.txt", "b", "d/e/c.txt", "c"));
+    }
+
+    /** Files are added, changed and removed at any depth, and the
+     *  subtrees no change reaches are shared. **/
+    @Test
+    public void apply() throws IOException {
+        String tree = Tree.apply(_store, _base, changes(
+                "a.txt", null, "d/b.txt", "B", "f/g.txt", "g"));
+        assertEquals(changes("d/b.txt", "B", "d/e/c.txt", "c",
+                "f/g.txt", "g"), flatten(tree));
+        assertEquals(Tree.find(_store, _base, "d/e").id(),
+                Tree.find(_store, tree, "d/e").id());
+        assertTrue(Tree.find(_store, tree, "d").isTree());
+        assertNull(Tree.find(_store, tree, "a.txt"));
+        assertNull(Tree.find(_store, tree, "d/b.txt/x"));
+    }
+    /** A directory whose files are all removed goes with them. **/
+    @Test
+    public void emptied() throws IOException {
+        String tree = Tree.apply(_store, _base, changes(
+                "d/b.txt", null, "d/e/c.txt", null));
+        assertEquals(changes("a.txt", "a"), flatten(tree));
+        assertNull(Tree.find(_store, tree, "d"));
+    }
+    /** A file replaces a directory, or a directory a file, when what
+     *  was there is removed with it. **/
+    @Test
+    public void replaced() throws IOException {
+        String tree = Tree.apply(_store, _base, changes(
+                "d", "d", "d/b.txt", null, "d/e/c.txt", null));
+        assertEquals(changes("a.txt", "a", "d", "d"), flatten(tree));
+        tree = Tree.apply(_store, tree, changes("d", null, "d/x", "x"));
+        assertEquals(changes("a.txt", "a", "d/x", "x"), flatten(tree));
+    }
+    /** A file at the name of a directory with files left in it, or a
+     *  file below one still kept, is refused. **/
+    @Test
+    public void conflict() throws IOException {
+        for (Map<String, String> changes : List.of(changes("d", "d"),
+                changes("d/e", "e", "d/e/c.txt", null, "d/e/x", "x"),
+                changes("d", "d", "d/b.txt", null),
+                changes("a.txt/x", "x"))) {
+            try {
+                Tree.apply(_store, _base, changes);
+                fail("applied " + changes);
+            } catch (IOException excp) {
+                assertTrue(excp.getMessage().contains(
+                        "both a file and a directory"));
+            }
+        }
+    }
+
+    /** Returns the paths and ids given as alternate elements of PAIRS.
+     * @param pairs pairs
+     * @return Map
+     **/
+    private static Map<String, String> changes(String... pairs) {
+        HashMap<String, String> changes = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            changes.put(pairs[i], pairs[i + 1] == null ? null
+                    : Utils.sha1(pairs[i + 1]));
+        }
+        return changes;
+    }
+    /** Returns every file under tree ID mapped to its blob id.
+     * @param id id
+     * @return Map
+     **/
+    private Map<String, String> flatten(String id) throws IOException {
+        HashMap<String, String> files = new HashMap<>();
+        Tree.flatten(_store, id, "", files);
+        return files;
+    }
+}